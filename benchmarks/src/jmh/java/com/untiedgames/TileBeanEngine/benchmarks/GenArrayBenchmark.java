@@ -0,0 +1,138 @@
+package com.untiedgames.TileBeanEngine.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.untiedgames.TileBeanEngine.GenArray;
+import com.untiedgames.TileBeanEngine.GenArrayKey;
+import com.untiedgames.TileBeanEngine.Object2DHandle;
+
+/**
+ * Measures the basic GenArray operations at different sizes.
+ * The array is kept at entity_count items throughout: Every benchmark which removes items adds the same number back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenArrayBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int entity_count;
+
+	private GenArray<Object, Object2DHandle> array;
+	private Object2DHandle[] handles; // handles[i] is the current handle of item i
+	private long[] expired_keys; // expired_keys[i] is a packed key to the entry of item i from before its current generation
+	private Object[] items;
+	private int[] order; // A shuffled order to visit the items in, so lookups don't just walk memory in order
+	private int cursor = 0;
+
+	@Setup
+	public void setup() {
+		array = new GenArray<>(Object2DHandle::new);
+		handles = new Object2DHandle[entity_count];
+		expired_keys = new long[entity_count];
+		items = new Object[entity_count];
+		order = new int[entity_count];
+		for (int i = 0; i < entity_count; i++) {
+			items[i] = new Object();
+			handles[i] = array.add(items[i]);
+			long key = handles[i].pack();
+			expired_keys[i] = GenArrayKey.pack(GenArrayKey.packedIndex(key), GenArrayKey.packedGeneration(key) - 1);
+			order[i] = i;
+		}
+		Random random = new Random(1234);
+		for (int i = entity_count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+	}
+
+	private int next() {
+		int i = order[cursor];
+		if (++cursor == entity_count) cursor = 0;
+		return i;
+	}
+
+	/**
+	 * One lookup by handle.
+	 */
+	@Benchmark
+	public Object get() {
+		return array.get(handles[next()]);
+	}
+
+	/**
+	 * One lookup by packed key.
+	 */
+	@Benchmark
+	public Object getPacked() {
+		return array.get(handles[next()].pack());
+	}
+
+	/**
+	 * One lookup by an expired packed key, which should fail as quickly as a valid one succeeds.
+	 */
+	@Benchmark
+	public Object getExpired() {
+		return array.get(expired_keys[next()]);
+	}
+
+	/**
+	 * Removes one item and adds it back, which reuses the entry it was in.
+	 */
+	@Benchmark
+	public Object2DHandle removeAdd() {
+		int i = next();
+		array.remove(handles[i]);
+		handles[i] = array.add(items[i]);
+		return handles[i];
+	}
+
+	/**
+	 * The churn ratio, in its own state so only the churn benchmark is run once per ratio.
+	 */
+	@State(Scope.Thread)
+	public static class Churn {
+		@Param({"0.01", "0.1", "0.5"})
+		public float churn; // The fraction of items removed and added again
+	}
+
+	/**
+	 * Removes churn * entity_count items scattered through the array, then adds them all back.
+	 */
+	@Benchmark
+	public void churn(Churn ratio, Blackhole blackhole) {
+		int n = Math.max(1, (int)(entity_count * ratio.churn));
+		int start = cursor;
+		for (int k = 0; k < n; k++) {
+			array.remove(handles[next()]);
+		}
+		cursor = start;
+		for (int k = 0; k < n; k++) {
+			int i = next();
+			handles[i] = array.add(items[i]);
+		}
+		blackhole.consume(array.count());
+	}
+
+	/**
+	 * Visits every item.
+	 */
+	@Benchmark
+	public void forEach(Blackhole blackhole) {
+		array.forEach((handle, item) -> blackhole.consume(item));
+	}
+
+}
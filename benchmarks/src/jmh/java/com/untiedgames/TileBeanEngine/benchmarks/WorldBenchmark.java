@@ -0,0 +1,154 @@
+package com.untiedgames.TileBeanEngine.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.untiedgames.TileBeanEngine.Component;
+import com.untiedgames.TileBeanEngine.Object2D;
+import com.untiedgames.TileBeanEngine.Object2DHandle;
+import com.untiedgames.TileBeanEngine.World;
+
+/**
+ * Measures adding and removing objects and components in a World, and finding components, at different world sizes.
+ * Each object has a Velocity and a Health component. The world is kept at entity_count objects throughout.
+ *
+ * The World is used directly, without starting the engine, so no window or GL context is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WorldBenchmark {
+
+	public static class Velocity extends Component {
+		float dx = 1, dy = 1;
+
+		public void update(float delta) {}
+	}
+
+	public static class Health extends Component {
+		int health = 100;
+
+		public void update(float delta) {}
+	}
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int entity_count;
+
+	private World world;
+	private Object2DHandle[] handles; // handles[i] is the current handle of object i
+	private int[] order; // A shuffled order to visit the objects in
+	private int cursor = 0;
+
+	@Setup
+	public void setup() {
+		world = new World();
+		handles = new Object2DHandle[entity_count];
+		order = new int[entity_count];
+		for (int i = 0; i < entity_count; i++) {
+			handles[i] = spawn();
+			order[i] = i;
+		}
+		Random random = new Random(1234);
+		for (int i = entity_count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+	}
+
+	private Object2DHandle spawn() {
+		Object2DHandle handle = world.add(new Object2D());
+		world.addComponent(handle, new Velocity());
+		world.addComponent(handle, new Health());
+		return handle;
+	}
+
+	private int next() {
+		int i = order[cursor];
+		if (++cursor == entity_count) cursor = 0;
+		return i;
+	}
+
+	/**
+	 * One component lookup by object handle and class.
+	 */
+	@Benchmark
+	public Velocity getComponent() {
+		return world.getComponent(handles[next()], Velocity.class);
+	}
+
+	/**
+	 * Collects every Velocity component into a new set.
+	 */
+	@Benchmark
+	public int getComponentsOfClass() {
+		return world.getComponentsOfClass(Velocity.class.hashCode()).size();
+	}
+
+	/**
+	 * Visits every Velocity component through a cached query, for comparison with getComponentsOfClass.
+	 */
+	@Benchmark
+	public void query(Blackhole blackhole) {
+		world.query(Velocity.class).forEach(blackhole::consume);
+	}
+
+	/**
+	 * Removes one component from an object and adds a new one back.
+	 */
+	@Benchmark
+	public void removeAddComponent() {
+		Object2DHandle handle = handles[next()];
+		world.removeComponent(handle, Health.class);
+		world.addComponent(handle, new Health());
+	}
+
+	/**
+	 * Removes one object (with its components) and adds a new one in its place.
+	 */
+	@Benchmark
+	public Object2DHandle removeAdd() {
+		int i = next();
+		world.remove(handles[i]);
+		handles[i] = spawn();
+		return handles[i];
+	}
+
+	/**
+	 * The churn ratio, in its own state so only the churn benchmark is run once per ratio.
+	 */
+	@State(Scope.Thread)
+	public static class Churn {
+		@Param({"0.01", "0.1", "0.5"})
+		public float churn; // The fraction of objects removed and added again
+	}
+
+	/**
+	 * Removes churn * entity_count objects scattered through the world, then adds as many new ones.
+	 */
+	@Benchmark
+	public void churn(Churn ratio, Blackhole blackhole) {
+		int n = Math.max(1, (int)(entity_count * ratio.churn));
+		int start = cursor;
+		for (int k = 0; k < n; k++) {
+			world.remove(handles[next()]);
+		}
+		cursor = start;
+		for (int k = 0; k < n; k++) {
+			handles[next()] = spawn();
+		}
+		blackhole.consume(world.count());
+	}
+
+}
@@ -1,36 +1,40 @@
 package com.untiedgames.TileBeanEngine.AssetSystem;
 
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
-import com.untiedgames.TileBeanEngine.GenArray;
-import com.untiedgames.TileBeanEngine.GenArrayEntry;
+import com.untiedgames.TileBeanEngine.ConcurrentGenArray;
 
 /*
  * AssetManager holds all the graphics, sounds, and music for the game.
  * You can add new assets to it and retrieve them at any time.
+ *
+ * AssetManager is thread-safe: Background loaders can add assets while other threads retrieve them.
+ * Retrieving assets (by handle or by name) never blocks. Adding and removing assets is synchronized.
 */
 public class AssetManager {
 
-	private GenArray<TextureAsset, TextureAssetHandle> collection_textures = new GenArray<>(TextureAssetHandle.class);
-	private HashMap<String, TextureAssetHandle> name_map_textures = new HashMap<>();
+	private ConcurrentGenArray<TextureAsset, TextureAssetHandle> collection_textures = new ConcurrentGenArray<>(TextureAssetHandle::new);
+	private ConcurrentHashMap<String, TextureAssetHandle> name_map_textures = new ConcurrentHashMap<>();
 	
-	private GenArray<TilesetAsset, TilesetAssetHandle> collection_tilesets = new GenArray<>(TilesetAssetHandle.class);
-	private HashMap<String, TilesetAssetHandle> name_map_tilesets = new HashMap<>();
+	private ConcurrentGenArray<TilesetAsset, TilesetAssetHandle> collection_tilesets = new ConcurrentGenArray<>(TilesetAssetHandle::new);
+	private ConcurrentHashMap<String, TilesetAssetHandle> name_map_tilesets = new ConcurrentHashMap<>();
 
-	private GenArray<TilemapAsset, TilemapAssetHandle> collection_tilemaps = new GenArray<>(TilemapAssetHandle.class);
-	private HashMap<String, TilemapAssetHandle> name_map_tilemaps = new HashMap<>();
+	private ConcurrentGenArray<TilemapAsset, TilemapAssetHandle> collection_tilemaps = new ConcurrentGenArray<>(TilemapAssetHandle::new);
+	private ConcurrentHashMap<String, TilemapAssetHandle> name_map_tilemaps = new ConcurrentHashMap<>();
 	
-	private GenArray<SoundAsset, SoundAssetHandle> collection_sounds = new GenArray<>(SoundAssetHandle.class);
-	private HashMap<String, SoundAssetHandle> name_map_sounds = new HashMap<>();
+	private ConcurrentGenArray<SoundAsset, SoundAssetHandle> collection_sounds = new ConcurrentGenArray<>(SoundAssetHandle::new);
+	private ConcurrentHashMap<String, SoundAssetHandle> name_map_sounds = new ConcurrentHashMap<>();
 	
-	private GenArray<MusicAsset, MusicAssetHandle> collection_music = new GenArray<>(MusicAssetHandle.class);
-	private HashMap<String, MusicAssetHandle> name_map_music = new HashMap<>();
+	private ConcurrentGenArray<MusicAsset, MusicAssetHandle> collection_music = new ConcurrentGenArray<>(MusicAssetHandle::new);
+	private ConcurrentHashMap<String, MusicAssetHandle> name_map_music = new ConcurrentHashMap<>();
+
+	private ConcurrentHashMap<String, TextureAtlas> atlases = new ConcurrentHashMap<>(); // Texture atlases by group name (or spritesheet manifest path)
 
 	/**
 	 * Adds an asset to the asset manager. (Does not load the asset. Do that manually.)
 	 */
-	public TextureAssetHandle add(TextureAsset asset) {
+	public synchronized TextureAssetHandle add(TextureAsset asset) {
 		if (asset == null) return TextureAssetHandle.empty();
 		if (asset.handle != null) {
 			if (asset.handle.isEmpty()) return (TextureAssetHandle)asset.handle; // Asset has been added to the AssetManager already, simply return its existing handle
@@ -38,14 +42,14 @@ public class AssetManager {
 		}
 		TextureAssetHandle ret = collection_textures.add(asset);
 		asset.handle = ret;
-		name_map_textures.put(asset.name, ret);
+		if (asset.name != null) name_map_textures.put(asset.name, ret);
 		return ret;
 	}
 
 	/**
 	 * Adds an asset to the asset manager. (Does not load the asset. Do that manually.)
 	 */
-	public TilesetAssetHandle add(TilesetAsset asset) {
+	public synchronized TilesetAssetHandle add(TilesetAsset asset) {
 		if (asset == null) return TilesetAssetHandle.empty();
 		if (asset.handle != null) {
 			if (asset.handle.isEmpty()) return (TilesetAssetHandle)asset.handle; // Asset has been added to the AssetManager already, simply return its existing handle
@@ -53,14 +57,14 @@ public class AssetManager {
 		}
 		TilesetAssetHandle ret = collection_tilesets.add(asset);
 		asset.handle = ret;
-		name_map_tilesets.put(asset.name, ret);
+		if (asset.name != null) name_map_tilesets.put(asset.name, ret);
 		return ret;
 	}
 
 	/**
 	 * Adds an asset to the asset manager. (Does not load the asset. Do that manually.)
 	 */
-	public TilemapAssetHandle add(TilemapAsset asset) {
+	public synchronized TilemapAssetHandle add(TilemapAsset asset) {
 		if (asset == null) return TilemapAssetHandle.empty();
 		if (asset.handle != null) {
 			if (asset.handle.isEmpty()) return (TilemapAssetHandle)asset.handle; // Asset has been added to the AssetManager already, simply return its existing handle
@@ -68,14 +72,14 @@ public class AssetManager {
 		}
 		TilemapAssetHandle ret = collection_tilemaps.add(asset);
 		asset.handle = ret;
-		name_map_tilemaps.put(asset.name, ret);
+		if (asset.name != null) name_map_tilemaps.put(asset.name, ret);
 		return ret;
 	}
 
 	/**
 	 * Adds an asset to the asset manager. (Does not load the asset. Do that manually.)
 	 */
-	public SoundAssetHandle add(SoundAsset asset) {
+	public synchronized SoundAssetHandle add(SoundAsset asset) {
 		if (asset == null) return SoundAssetHandle.empty();
 		if (asset.handle != null) {
 			if (asset.handle.isEmpty()) return (SoundAssetHandle)asset.handle; // Asset has been added to the AssetManager already, simply return its existing handle
@@ -83,14 +87,14 @@ public class AssetManager {
 		}
 		SoundAssetHandle ret = collection_sounds.add(asset);
 		asset.handle = ret;
-		name_map_sounds.put(asset.name, ret);
+		if (asset.name != null) name_map_sounds.put(asset.name, ret);
 		return ret;
 	}
 
 	/**
 	 * Adds an asset to the asset manager. (Does not load the asset. Do that manually.)
 	 */
-	public MusicAssetHandle add(MusicAsset asset) {
+	public synchronized MusicAssetHandle add(MusicAsset asset) {
 		if (asset == null) return MusicAssetHandle.empty();
 		if (asset.handle != null) {
 			if (asset.handle.isEmpty()) return (MusicAssetHandle)asset.handle; // Asset has been added to the AssetManager already, simply return its existing handle
@@ -98,21 +102,20 @@ public class AssetManager {
 		}
 		MusicAssetHandle ret = collection_music.add(asset);
 		asset.handle = ret;
-		name_map_music.put(asset.name, ret);
+		if (asset.name != null) name_map_music.put(asset.name, ret);
 		return ret;
 	}
 
 	/**
 	 * Removes an asset from the asset manager. If the asset is loaded, it will be unloaded.
 	 */
-	public void remove(TextureAssetHandle handle) {
+	public synchronized void remove(TextureAssetHandle handle) {
 		if (!handle.isEmpty() || collection_textures.expired(handle)) return;
-		Optional<TextureAsset> opt = collection_textures.get(handle);
-		if (opt.isPresent()) {
-			TextureAsset asset = opt.get();
+		TextureAsset asset = collection_textures.get(handle);
+		if (asset != null) {
 			asset.handle = null;
 			asset.unload();
-			name_map_textures.remove(asset.name);
+			if (asset.name != null) name_map_textures.remove(asset.name, handle);
 		}
 		collection_textures.remove(handle);
 	}
@@ -120,14 +123,13 @@ public class AssetManager {
 	/**
 	 * Removes an asset from the asset manager. If the asset is loaded, it will be unloaded.
 	 */
-	public void remove(TilesetAssetHandle handle) {
+	public synchronized void remove(TilesetAssetHandle handle) {
 		if (!handle.isEmpty() || collection_tilesets.expired(handle)) return;
-		Optional<TilesetAsset> opt = collection_tilesets.get(handle);
-		if (opt.isPresent()) {
-			TilesetAsset asset = opt.get();
+		TilesetAsset asset = collection_tilesets.get(handle);
+		if (asset != null) {
 			asset.handle = null;
 			asset.unload();
-			name_map_tilesets.remove(asset.name);
+			if (asset.name != null) name_map_tilesets.remove(asset.name, handle);
 		}
 		collection_tilesets.remove(handle);
 	}
@@ -135,14 +137,13 @@ public class AssetManager {
 	/**
 	 * Removes an asset from the asset manager. If the asset is loaded, it will be unloaded.
 	 */
-	public void remove(TilemapAssetHandle handle) {
+	public synchronized void remove(TilemapAssetHandle handle) {
 		if (!handle.isEmpty() || collection_tilemaps.expired(handle)) return;
-		Optional<TilemapAsset> opt = collection_tilemaps.get(handle);
-		if (opt.isPresent()) {
-			TilemapAsset asset = opt.get();
+		TilemapAsset asset = collection_tilemaps.get(handle);
+		if (asset != null) {
 			asset.handle = null;
 			asset.unload();
-			name_map_tilemaps.remove(asset.name);
+			if (asset.name != null) name_map_tilemaps.remove(asset.name, handle);
 		}
 		collection_tilemaps.remove(handle);
 	}
@@ -150,14 +151,13 @@ public class AssetManager {
 	/**
 	 * Removes an asset from the asset manager. If the asset is loaded, it will be unloaded.
 	 */
-	public void remove(SoundAssetHandle handle) {
+	public synchronized void remove(SoundAssetHandle handle) {
 		if (!handle.isEmpty() || collection_sounds.expired(handle)) return;
-		Optional<SoundAsset> opt = collection_sounds.get(handle);
-		if (opt.isPresent()) {
-			SoundAsset asset = opt.get();
+		SoundAsset asset = collection_sounds.get(handle);
+		if (asset != null) {
 			asset.handle = null;
 			asset.unload();
-			name_map_sounds.remove(asset.name);
+			if (asset.name != null) name_map_sounds.remove(asset.name, handle);
 		}
 		collection_sounds.remove(handle);
 	}
@@ -165,14 +165,13 @@ public class AssetManager {
 	/**
 	 * Removes an asset from the asset manager. If the asset is loaded, it will be unloaded.
 	 */
-	public void remove(MusicAssetHandle handle) {
+	public synchronized void remove(MusicAssetHandle handle) {
 		if (!handle.isEmpty() || collection_music.expired(handle)) return;
-		Optional<MusicAsset> opt = collection_music.get(handle);
-		if (opt.isPresent()) {
-			MusicAsset asset = opt.get();
+		MusicAsset asset = collection_music.get(handle);
+		if (asset != null) {
 			asset.handle = null;
 			asset.unload();
-			name_map_music.remove(asset.name);
+			if (asset.name != null) name_map_music.remove(asset.name, handle);
 		}
 		collection_music.remove(handle);
 	}
@@ -180,37 +179,12 @@ public class AssetManager {
 	/**
 	 * Removes all assets from the asset manager and unloads them.
 	 */
-	public void clear() {
-		for(GenArrayEntry<TextureAsset, TextureAssetHandle> entry : collection_textures) {
-			if (entry.hasValue()) {
-				Optional<TextureAsset> opt = entry.getData();
-				opt.get().unload();
-			}
-		}
-		for(GenArrayEntry<TilesetAsset, TilesetAssetHandle> entry : collection_tilesets) {
-			if (entry.hasValue()) {
-				Optional<TilesetAsset> opt = entry.getData();
-				opt.get().unload();
-			}
-		}
-		for(GenArrayEntry<TilemapAsset, TilemapAssetHandle> entry : collection_tilemaps) {
-			if (entry.hasValue()) {
-				Optional<TilemapAsset> opt = entry.getData();
-				opt.get().unload();
-			}
-		}
-		for(GenArrayEntry<SoundAsset, SoundAssetHandle> entry : collection_sounds) {
-			if (entry.hasValue()) {
-				Optional<SoundAsset> opt = entry.getData();
-				opt.get().unload();
-			}
-		}
-		for(GenArrayEntry<MusicAsset, MusicAssetHandle> entry : collection_music) {
-			if (entry.hasValue()) {
-				Optional<MusicAsset> opt = entry.getData();
-				opt.get().unload();
-			}
-		}
+	public synchronized void clear() {
+		collection_textures.forEach((handle, asset) -> asset.unload());
+		collection_tilesets.forEach((handle, asset) -> asset.unload());
+		collection_tilemaps.forEach((handle, asset) -> asset.unload());
+		collection_sounds.forEach((handle, asset) -> asset.unload());
+		collection_music.forEach((handle, asset) -> asset.unload());
 		collection_textures.clear();
 		name_map_textures.clear();
 		collection_tilesets.clear();
@@ -221,176 +195,166 @@ public class AssetManager {
 		name_map_sounds.clear();
 		collection_music.clear();
 		name_map_music.clear();
+		atlases.forEach((group, atlas) -> atlas.dispose());
+		atlases.clear();
+	}
+
+	/**
+	 * Returns the TextureAtlas for the given group, making it if it doesn't exist yet.
+	 * TextureAssets pack their frames into these (see TextureAsset.setAtlasGroup), and spritesheets are kept in one named after their manifest path.
+	 */
+	public TextureAtlas getAtlas(String group) {
+		return atlases.computeIfAbsent(group, g -> new TextureAtlas());
 	}
 
 	/**
 	 * Retrieves an asset from the collection if present.
 	 */
 	public Optional<TextureAsset> tryGet(TextureAssetHandle handle) {
-		return collection_textures.get(handle);
+		return Optional.ofNullable(collection_textures.get(handle));
 	}
 
 	/**
 	 * Retrieves an asset from the collection if present.
 	 */
 	public Optional<TilesetAsset> tryGet(TilesetAssetHandle handle) {
-		return collection_tilesets.get(handle);
+		return Optional.ofNullable(collection_tilesets.get(handle));
 	}
 
 	/**
 	 * Retrieves an asset from the collection if present.
 	 */
 	public Optional<TilemapAsset> tryGet(TilemapAssetHandle handle) {
-		return collection_tilemaps.get(handle);
+		return Optional.ofNullable(collection_tilemaps.get(handle));
 	}
 
 	/**
 	 * Retrieves an asset from the collection if present.
 	 */
 	public Optional<SoundAsset> tryGet(SoundAssetHandle handle) {
-		return collection_sounds.get(handle);
+		return Optional.ofNullable(collection_sounds.get(handle));
 	}
 
 	/**
 	 * Retrieves an asset from the collection if present.
 	 */
 	public Optional<MusicAsset> tryGet(MusicAssetHandle handle) {
-		return collection_music.get(handle);
+		return Optional.ofNullable(collection_music.get(handle));
 	}
 
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the asset to be there.
 	 */
 	public TextureAsset get(TextureAssetHandle handle) {
-		return collection_textures.get(handle).get();
+		return collection_textures.get(handle);
 	}
 
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the asset to be there.
 	 */
 	public TilesetAsset get(TilesetAssetHandle handle) {
-		return collection_tilesets.get(handle).get();
+		return collection_tilesets.get(handle);
 	}
 
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the asset to be there.
 	 */
 	public TilemapAsset get(TilemapAssetHandle handle) {
-		return collection_tilemaps.get(handle).get();
+		return collection_tilemaps.get(handle);
 	}
 	
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the asset to be there.
 	 */
 	public SoundAsset get(SoundAssetHandle handle) {
-		return collection_sounds.get(handle).get();
+		return collection_sounds.get(handle);
 	}
 
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the asset to be there.
 	 */
 	public MusicAsset get(MusicAssetHandle handle) {
-		return collection_music.get(handle).get();
+		return collection_music.get(handle);
 	}
 
 	/**
 	 * Retrieves a TextureAsset with the associated user-specified name from the collection if present.
 	 */
 	public Optional<TextureAsset> getTextureAsset(String name) {
-		if (name_map_textures.containsKey(name)) {
-			return collection_textures.get(name_map_textures.get(name));
-		}
-		return Optional.empty();
+		if (name == null) return Optional.empty();
+		return Optional.ofNullable(collection_textures.get(name_map_textures.get(name)));
 	}
 
 	/**
 	 * Retrieves a TilesetAsset with the associated user-specified name from the collection if present.
 	 */
 	public Optional<TilesetAsset> getTilesetAsset(String name) {
-		if (name_map_tilesets.containsKey(name)) {
-			return collection_tilesets.get(name_map_tilesets.get(name));
-		}
-		return Optional.empty();
+		if (name == null) return Optional.empty();
+		return Optional.ofNullable(collection_tilesets.get(name_map_tilesets.get(name)));
 	}
 
 	/**
 	 * Retrieves a TilemapAsset with the associated user-specified name from the collection if present.
 	 */
 	public Optional<TilemapAsset> getTilemapAsset(String name) {
-		if (name_map_tilemaps.containsKey(name)) {
-			return collection_tilemaps.get(name_map_tilemaps.get(name));
-		}
-		return Optional.empty();
+		if (name == null) return Optional.empty();
+		return Optional.ofNullable(collection_tilemaps.get(name_map_tilemaps.get(name)));
 	}
 
 	/**
 	 * Retrieves a SoundAsset with the associated user-specified name from the collection if present.
 	 */
 	public Optional<SoundAsset> getSoundAsset(String name) {
-		if (name_map_sounds.containsKey(name)) {
-			return collection_sounds.get(name_map_sounds.get(name));
-		}
-		return Optional.empty();
+		if (name == null) return Optional.empty();
+		return Optional.ofNullable(collection_sounds.get(name_map_sounds.get(name)));
 	}
 
 	/**
 	 * Retrieves a MusicAsset with the associated user-specified name from the collection if present.
 	 */
 	public Optional<MusicAsset> getMusicAsset(String name) {
-		if (name_map_music.containsKey(name)) {
-			return collection_music.get(name_map_music.get(name));
-		}
-		return Optional.empty();
+		if (name == null) return Optional.empty();
+		return Optional.ofNullable(collection_music.get(name_map_music.get(name)));
 	}
 
 	/**
 	 * Returns the TextureAssetHandle associated with the given user-specified name if present.
 	 */
 	public TextureAssetHandle getTextureAssetHandle(String name) {
-		if (name_map_textures.containsKey(name)) {
-			return name_map_textures.get(name);
-		}
-		return TextureAssetHandle.empty();
+		TextureAssetHandle ret = name == null ? null : name_map_textures.get(name);
+		return ret == null ? TextureAssetHandle.empty() : ret;
 	}
 
 	/**
 	 * Returns the TilesetAssetHandle associated with the given user-specified name if present.
 	 */
 	public TilesetAssetHandle getTilesetAssetHandle(String name) {
-		if (name_map_tilesets.containsKey(name)) {
-			return name_map_tilesets.get(name);
-		}
-		return TilesetAssetHandle.empty();
+		TilesetAssetHandle ret = name == null ? null : name_map_tilesets.get(name);
+		return ret == null ? TilesetAssetHandle.empty() : ret;
 	}
 
 	/**
 	 * Returns the TilemapAssetHandle associated with the given user-specified name if present.
 	 */
 	public TilemapAssetHandle getTilemapAssetHandle(String name) {
-		if (name_map_tilemaps.containsKey(name)) {
-			return name_map_tilemaps.get(name);
-		}
-		return TilemapAssetHandle.empty();
+		TilemapAssetHandle ret = name == null ? null : name_map_tilemaps.get(name);
+		return ret == null ? TilemapAssetHandle.empty() : ret;
 	}
 
 	/**
 	 * Returns the SoundAssetHandle associated with the given user-specified name if present.
 	 */
 	public SoundAssetHandle getSoundAssetHandle(String name) {
-		if (name_map_sounds.containsKey(name)) {
-			return name_map_sounds.get(name);
-		}
-		return SoundAssetHandle.empty();
+		SoundAssetHandle ret = name == null ? null : name_map_sounds.get(name);
+		return ret == null ? SoundAssetHandle.empty() : ret;
 	}
 
 	/**
 	 * Returns the MusicAssetHandle associated with the given user-specified name if present.
 	 */
 	public MusicAssetHandle getMusicAssetHandle(String name) {
-		if (name_map_music.containsKey(name)) {
-			return name_map_music.get(name);
-		}
-		return MusicAssetHandle.empty();
+		MusicAssetHandle ret = name == null ? null : name_map_music.get(name);
+		return ret == null ? MusicAssetHandle.empty() : ret;
 	}
 
 }
@@ -5,18 +5,31 @@ import java.util.Scanner;
 import java.util.Optional;
 
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.untiedgames.TileBeanEngine.TileBeanEngine;
 
 /**
- * TextureAsset is an asset which can hold images as libGDX Textures.
+ * TextureAsset is an asset which can hold images as libGDX TextureRegions.
  * It can hold one image, or many images to represent an animation.
- * This is a little simplified compared to a real-world implementation, which might support animations packed into spritesheets.
+ *
+ * The frames of an .anim are packed into a shared TextureAtlas (the group TextureAtlas.default_group, unless another is given with setAtlasGroup),
+ * so sprites can switch frames, and sprites with different animations can be drawn together, without switching textures.
+ * A single .png gets a texture of its own, unless it's given an atlas group.
+ *
+ * A frame can also be a region of a prebuilt spritesheet, as "manifest path#region name", such as "map/grasslands_tileset/spritesheet.txt#bg1.png".
+ * (See TextureAtlas.loadSheet for the manifest format.) This works as the asset's path, or as a frame in an .anim.
  */
 public class TextureAsset extends Asset {
 
-	private ArrayList<Texture> textures;
+	private ArrayList<TextureRegion> regions; // One per frame
+	private ArrayList<TextureAtlas> region_atlases; // The atlas each frame's region came from, or null if the region is of a texture in textures
+	private ArrayList<Texture> textures; // Textures this asset owns (frames which weren't packed into an atlas)
+	private String atlas_group = null; // The atlas group to pack frames into, or null to use the default
 	private float fps = 0;
 	private boolean is_looping = true;
+	private int version = 0; // Changes whenever frames are loaded or unloaded
 	
 	public TextureAsset(String name_and_path) {
 		this(name_and_path, name_and_path, FILEMODE.INTERNAL);
@@ -28,26 +41,41 @@ public class TextureAsset extends Asset {
 
 	public TextureAsset(String name, String path, FILEMODE file_mode) {
 		super(name, path, file_mode);
+		regions = new ArrayList<>();
+		region_atlases = new ArrayList<>();
 		textures = new ArrayList<>();
 	}
 
 	public boolean isLoaded() {
-		return !textures.isEmpty();
+		return !regions.isEmpty();
 	}
 
 	/**
-	 * Loads the TextureAsset from its path. Supports .png and .anim files.
+	 * Sets the TextureAtlas group (see AssetManager.getAtlas) this asset's frames are packed into when loaded.
+	 * Giving a .png a group packs it along with the other images in that group. Set to null to go back to the default.
+	 * Call this before loading.
+	 */
+	public void setAtlasGroup(String group) {
+		atlas_group = group;
+	}
+
+	public String getAtlasGroup() {
+		return atlas_group;
+	}
+
+	/**
+	 * Loads the TextureAsset from its path. Supports .png and .anim files, and spritesheet regions.
 	 * Returns true on success, false otherwise.
 	 * If it cannot be loaded, an error message will be printed in the console.
 	 */
 	public boolean load() {
-		if (!textures.isEmpty()) return true; // Asset is already loaded
+		if (!regions.isEmpty()) return true; // Asset is already loaded
 		try {
-			FileHandle file = makeFileHandle(path, file_mode); 
-			if (getExtension(path).equals("png")) {
-				textures.add(new Texture(file));
+			if (path.indexOf('#') != -1 || getExtension(path).equals("png")) {
+				loadFrame(path, atlas_group);
 				return true;
 			} else if (getExtension(path).equals("anim")) {
+				FileHandle file = makeFileHandle(path, file_mode);
 				String data = file.readString();
 				Scanner sc = new Scanner(data);
 				if (data.indexOf('\r') != -1) sc.useDelimiter("\r\n");
@@ -67,7 +95,7 @@ public class TextureAsset extends Asset {
 						sc2.close();
 						break;
 					}
-					if (key.equals("frame")) textures.add(new Texture(makeFileHandle(sc2.next(), file_mode)));
+					if (key.equals("frame")) loadFrame(sc2.next(), atlas_group != null ? atlas_group : TextureAtlas.default_group);
 					else if (key.equals("fps")) fps = sc2.nextFloat();
 					else if (key.equals("is_looping")) is_looping = sc2.nextBoolean();
 					else {
@@ -87,6 +115,7 @@ public class TextureAsset extends Asset {
 				return true;
 			}
 		} catch (Exception e) {
+			unload(); // Give back any frames which did load
 			System.err.println("Failed to load texture asset \"" + path + "\", file mode " + file_mode.toString() + "\nDetails: " + e.getMessage());
 			return false;
 		}
@@ -94,34 +123,80 @@ public class TextureAsset extends Asset {
 		return false;
 	}
 
+	/**
+	 * Loads one frame: A region of a spritesheet, or an image packed into the given atlas group (or a texture of its own, if the group is null).
+	 */
+	private void loadFrame(String frame_path, String group) throws Exception {
+		int index = frame_path.indexOf('#');
+		if (index != -1) {
+			String manifest_path = frame_path.substring(0, index);
+			TextureAtlas atlas = TileBeanEngine.assets.getAtlas(manifest_path);
+			if (!atlas.loadSheet(manifest_path, file_mode)) throw new Exception("Couldn't load spritesheet \"" + manifest_path + "\"");
+			Optional<TextureRegion> opt_region = atlas.findRegion(manifest_path, frame_path.substring(index + 1));
+			if (!opt_region.isPresent()) throw new Exception("No region named \"" + frame_path.substring(index + 1) + "\" in spritesheet \"" + manifest_path + "\"");
+			regions.add(opt_region.get());
+			region_atlases.add(atlas);
+			version++;
+		} else if (group != null) {
+			TextureAtlas atlas = TileBeanEngine.assets.getAtlas(group);
+			Pixmap pixmap = new Pixmap(makeFileHandle(frame_path, file_mode));
+			regions.add(atlas.pack(pixmap));
+			region_atlases.add(atlas);
+			version++;
+			pixmap.dispose();
+		} else {
+			Texture texture = new Texture(makeFileHandle(frame_path, file_mode));
+			textures.add(texture);
+			regions.add(new TextureRegion(texture));
+			region_atlases.add(null);
+			version++;
+		}
+	}
+
 	/**
 	 * Unloads the TextureAsset, performing any destruction of resources required.
+	 * Packed frames are given back to their atlases.
 	 */
 	public void unload() {
+		for (int i = 0; i < regions.size(); i++) {
+			if (region_atlases.get(i) != null) region_atlases.get(i).release(regions.get(i));
+		}
 		for (Texture texture : textures) {
 			texture.dispose();
 		}
+		regions.clear();
+		region_atlases.clear();
 		textures.clear();
+		version++;
+	}
+
+	/**
+	 * Returns a number which changes whenever the asset's frames change (when it's loaded or unloaded, including by being removed from the AssetManager).
+	 * Anything that holds on to regions from getTexture can compare this to know when to look them up again.
+	 */
+	public int getVersion() {
+		return version;
 	}
 
 	public int getTotalFrames() {
-		return textures.size();
+		return regions.size();
 	}
 
 	/**
 	 * Convenience method equivalent to getTexture(0).
 	 */
-	public Optional<Texture> getTexture() {
+	public Optional<TextureRegion> getTexture() {
 		return getTexture(0);
 	}
 
 	/**
-	 * Returns the texture at the given frame index, if present.
+	 * Returns the texture region at the given frame index, if present.
+	 * Frames may be packed into a shared texture, so draw the region rather than its whole texture.
 	 */
-	public Optional<Texture> getTexture(int frame) {
-		if (textures.isEmpty()) return Optional.empty();
-		if (frame < 0 || frame >= textures.size()) return Optional.empty();
-		return Optional.of(textures.get(frame));
+	public Optional<TextureRegion> getTexture(int frame) {
+		if (regions.isEmpty()) return Optional.empty();
+		if (frame < 0 || frame >= regions.size()) return Optional.empty();
+		return Optional.of(regions.get(frame));
 	}
 
 	public float getFPS() {
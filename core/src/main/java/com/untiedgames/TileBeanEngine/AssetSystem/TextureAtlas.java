@@ -0,0 +1,217 @@
+package com.untiedgames.TileBeanEngine.AssetSystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Optional;
+import java.util.Scanner;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+/**
+ * TextureAtlas packs many small images into a few large textures, called pages, so sprites using them can be drawn one after another without switching textures.
+ * (Every texture switch makes the SpriteBatch flush, so an animation with 10 frames as 10 separate textures can break up batching on every draw.)
+ *
+ * Images are added with pack, which copies them into the first page with room, making a new page when none has room.
+ * An atlas can also hold prebuilt pages loaded from a spritesheet: A .png along with a .txt manifest which names each region, one per line, as "name = x y width height".
+ *
+ * Each region handed out by pack or findRegion counts as a use of its page. Give regions back with release when you're done with them.
+ * A page is disposed once none of its regions are in use. (Space in a page isn't reused while the page is still in use.)
+ *
+ * The AssetManager keeps an atlas for each group name (see AssetManager.getAtlas). TextureAsset packs its frames into them.
+ * Like any texture, atlases can only be used from the thread with the GL context.
+ */
+public class TextureAtlas {
+
+	public static final String default_group = "default"; // The group .anim frames are packed into, unless the TextureAsset was given another
+
+	private class Page {
+		Texture texture;
+		String sheet_path = null; // The manifest this page was loaded from, or null if images are packed into it
+		boolean is_full = false; // If true, nothing more can be packed into this page
+		int use_count = 0;
+
+		// Packing is done in shelves: Rows of images, filled left to right. Only the last shelf is open.
+		int shelf_x = 0;
+		int shelf_y = 0;
+		int shelf_height = 0;
+	}
+
+	private final int page_size; // The width and height of each page, in pixels
+	private final int padding; // Empty pixels left between packed images, so neighbors don't bleed into each other when filtered
+	private ArrayList<Page> pages = new ArrayList<>();
+	private IdentityHashMap<TextureRegion, Page> region_pages = new IdentityHashMap<>(); // The page of each region in use
+	private HashMap<String, TextureRegion> sheet_regions = new HashMap<>(); // Named regions from spritesheets, as "manifest path#name"
+
+	public TextureAtlas() {
+		this(1024, 2);
+	}
+
+	public TextureAtlas(int page_size, int padding) {
+		this.page_size = Math.max(1, page_size);
+		this.padding = Math.max(0, padding);
+	}
+
+	/**
+	 * Copies the given image into a page, and returns the region it was copied to. The pixmap isn't needed afterwards, and can be disposed.
+	 * An image too large to fit in a page gets a texture of its own.
+	 */
+	public TextureRegion pack(Pixmap pixmap) {
+		int w = pixmap.getWidth();
+		int h = pixmap.getHeight();
+		if (w + padding > page_size || h + padding > page_size) {
+			Page page = new Page();
+			page.texture = new Texture(pixmap);
+			page.is_full = true;
+			pages.add(page);
+			return use(page, new TextureRegion(page.texture));
+		}
+
+		for (Page page : pages) {
+			if (page.is_full || page.sheet_path != null) continue;
+			TextureRegion region = packInto(page, pixmap);
+			if (region != null) return region;
+		}
+
+		Page page = new Page();
+		page.texture = new Texture(page_size, page_size, Pixmap.Format.RGBA8888);
+		pages.add(page);
+		return packInto(page, pixmap);
+	}
+
+	// Copies the image into the page's open shelf, or a new shelf below it. Returns null if the page has no room.
+	private TextureRegion packInto(Page page, Pixmap pixmap) {
+		int w = pixmap.getWidth() + padding;
+		int h = pixmap.getHeight() + padding;
+		if (page.shelf_x + w > page_size) {
+			// Start a new shelf
+			page.shelf_y += page.shelf_height;
+			page.shelf_x = 0;
+			page.shelf_height = 0;
+		}
+		if (page.shelf_y + Math.max(h, page.shelf_height) > page_size) {
+			if (page.shelf_x == 0) page.is_full = true; // Not even a new shelf fits
+			return null;
+		}
+		int x = page.shelf_x;
+		int y = page.shelf_y;
+		page.texture.draw(pixmap, x, y);
+		page.shelf_x += w;
+		page.shelf_height = Math.max(page.shelf_height, h);
+		return use(page, new TextureRegion(page.texture, x, y, pixmap.getWidth(), pixmap.getHeight()));
+	}
+
+	private TextureRegion use(Page page, TextureRegion region) {
+		page.use_count++;
+		region_pages.put(region, page);
+		return region;
+	}
+
+	/**
+	 * Returns true if the spritesheet with the given manifest path has been loaded into this atlas, false otherwise.
+	 */
+	public boolean hasSheet(String manifest_path) {
+		for (Page page : pages) {
+			if (manifest_path.equals(page.sheet_path)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Loads a spritesheet as a prebuilt page: The .txt manifest at the given path, and the .png beside it with the same name.
+	 * Its regions can then be found with findRegion. Returns true on success (or if it's already loaded), false otherwise.
+	 * If it cannot be loaded, an error message will be printed in the console.
+	 */
+	public boolean loadSheet(String manifest_path, Asset.FILEMODE file_mode) {
+		if (hasSheet(manifest_path)) return true;
+		HashMap<String, TextureRegion> regions = new HashMap<>();
+		Page page = new Page();
+		try {
+			String data = Asset.makeFileHandle(manifest_path, file_mode).readString();
+			FileHandle image_file = Asset.makeFileHandle(manifest_path.substring(0, manifest_path.lastIndexOf('.')) + ".png", file_mode);
+			page.texture = new Texture(image_file);
+			Scanner sc = new Scanner(data);
+			if (data.indexOf('\r') != -1) sc.useDelimiter("\r\n");
+			else sc.useDelimiter("\n");
+			while (sc.hasNext()) {
+				String line = sc.next();
+				if (line.trim().isEmpty()) continue;
+				int equals_index = line.indexOf('=');
+				if (equals_index == -1) throw new Exception("Invalid line in manifest: \"" + line + "\"");
+				String name = line.substring(0, equals_index).trim();
+				Scanner sc2 = new Scanner(line.substring(equals_index + 1));
+				int x = sc2.nextInt();
+				int y = sc2.nextInt();
+				int w = sc2.nextInt();
+				int h = sc2.nextInt();
+				sc2.close();
+				regions.put(manifest_path + "#" + name, new TextureRegion(page.texture, x, y, w, h));
+			}
+			sc.close();
+		} catch (Exception e) {
+			if (page.texture != null) page.texture.dispose();
+			System.err.println("Failed to load spritesheet \"" + manifest_path + "\", file mode " + file_mode.toString() + "\nDetails: " + e.getMessage());
+			return false;
+		}
+		page.sheet_path = manifest_path;
+		page.is_full = true;
+		pages.add(page);
+		sheet_regions.putAll(regions);
+		return true;
+	}
+
+	/**
+	 * Returns the region with the given name from the spritesheet with the given manifest path, if present. Load the spritesheet with loadSheet first.
+	 */
+	public Optional<TextureRegion> findRegion(String manifest_path, String name) {
+		TextureRegion region = sheet_regions.get(manifest_path + "#" + name);
+		if (region == null) return Optional.empty();
+		return Optional.of(use(sheetPage(region), new TextureRegion(region, 0, 0, region.getRegionWidth(), region.getRegionHeight())));
+	}
+
+	// Returns the page a spritesheet region is on
+	private Page sheetPage(TextureRegion sheet_region) {
+		for (Page page : pages) {
+			if (page.texture == sheet_region.getTexture()) return page;
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back a region from pack or findRegion. Once none of a page's regions are in use, the page is disposed.
+	 */
+	public void release(TextureRegion region) {
+		Page page = region_pages.remove(region);
+		if (page == null) return;
+		if (--page.use_count > 0) return;
+		pages.remove(page);
+		page.texture.dispose();
+		if (page.sheet_path != null) {
+			String prefix = page.sheet_path + "#";
+			sheet_regions.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Returns the number of pages (textures) this atlas holds.
+	 */
+	public int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * Disposes every page. Any regions still in use become invalid.
+	 */
+	public void dispose() {
+		for (Page page : pages) {
+			page.texture.dispose();
+		}
+		pages.clear();
+		region_pages.clear();
+		sheet_regions.clear();
+	}
+
+}
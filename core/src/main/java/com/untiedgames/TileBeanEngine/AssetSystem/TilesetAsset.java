@@ -9,6 +9,7 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.untiedgames.TileBeanEngine.TileCollisionShape;
 
 /**
@@ -143,7 +144,7 @@ public class TilesetAsset extends Asset {
 		// For any other tiles, or if there's no collision data file:
 		// We'll do some *very* basic auto-detection for collision shapes based on the tileset texture.
 		// Any tiles which contain at least one opaque pixel will automatically be assigned the FULL collision type (a rectangular box).
-		Texture texture = texture_asset.getTexture().get();
+		Texture texture = texture_asset.getTexture().get().getTexture(); // A .png without an atlas group, so the region is the whole texture
 		int id_ctr = 0;
 		TextureData texdat = texture.getTextureData();
 		texdat.prepare();
@@ -217,7 +218,7 @@ public class TilesetAsset extends Asset {
 	 * Returns the texture the tileset owns.
 	 */
 	public Optional<Texture> getTexture() {
-		return texture_asset.getTexture();
+		return texture_asset.getTexture().map(TextureRegion::getTexture);
 	}
 
 	/**
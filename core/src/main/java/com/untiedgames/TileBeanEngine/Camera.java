@@ -1,15 +1,18 @@
 package com.untiedgames.TileBeanEngine;
+import java.nio.ByteBuffer;
 import java.util.Optional;
 
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 
 /**
  * A Camera represents a view of the game world. You can move it, zoom it, and rotate it using the properties of the Object2D that owns it.
 */
-public class Camera extends Component {
+@UpdateAccess(readsObject2D = true, parallelInstances = true)
+public class Camera extends Component implements Snapshottable {
 
 	private int width = 0;
 	private int height = 0;
@@ -21,6 +24,10 @@ public class Camera extends Component {
 		internal_camera = new OrthographicCamera(width, height);
 	}
 
+	private Camera() { // Used by World.restore
+		this(1, 1);
+	}
+
 	public void initialize() {
 		TileBeanEngine.world.get(getOwner()).z = 1;
 	}
@@ -52,16 +59,51 @@ public class Camera extends Component {
 		if (opt.isPresent()) {
 			Object2D obj = opt.get();
 			if (obj.z != 0.0f) {
+				// The location and rotation are in world space, so a camera attached to another object follows it
+				float rotation = obj.getWorldRotation();
 				Matrix4 m = new Matrix4();
 				m.scale(obj.z, -obj.z, 0);
-				if (obj.rotation != 0.0f) m.rotate(0, 0, 1, obj.rotation * 180.0f / (float)Math.PI);
-				m.translate(-obj.x, -obj.y, 0);
+				if (rotation != 0.0f) m.rotate(0, 0, 1, rotation * 180.0f / (float)Math.PI);
+				m.translate(-obj.getWorldX(), -obj.getWorldY(), 0);
 				spritebatch.setTransformMatrix(m);
 				shaperenderer.setTransformMatrix(m);
 			}
 		}
 	}
 
+	/**
+	 * Sets the given rectangle to the area of the world this camera can see, and returns true.
+	 * The owner's z zooms the view, and if it's rotated, the rectangle is the axis-aligned box around the rotated view.
+	 * Returns false if the view can't be worked out (the owner is gone, or has a z of 0, which disables the camera transform).
+	 */
+	public boolean getViewBounds(Rectangle bounds) {
+		Object2D obj = TileBeanEngine.world.get(getOwner());
+		if (obj == null || obj.z == 0.0f) return false;
+		float half_w = width * .5f / Math.abs(obj.z);
+		float half_h = height * .5f / Math.abs(obj.z);
+		float rotation = obj.getWorldRotation();
+		if (rotation != 0.0f) {
+			float cos = Math.abs((float)Math.cos(rotation));
+			float sin = Math.abs((float)Math.sin(rotation));
+			float rotated_w = cos * half_w + sin * half_h;
+			half_h = sin * half_w + cos * half_h;
+			half_w = rotated_w;
+		}
+		bounds.set(obj.getWorldX() - half_w, obj.getWorldY() - half_h, half_w * 2, half_h * 2);
+		return true;
+	}
+
 	public void update(float delta) {}
 
+	public void writeSnapshot(ByteBuffer buffer) {
+		buffer.putInt(width);
+		buffer.putInt(height);
+	}
+
+	public void readSnapshot(ByteBuffer buffer) {
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		setSize(width, height);
+	}
+
 }
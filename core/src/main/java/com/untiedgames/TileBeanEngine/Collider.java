@@ -1,10 +1,10 @@
 package com.untiedgames.TileBeanEngine;
 
+import java.nio.ByteBuffer;
 import java.util.Optional;
 
-import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Affine2;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.math.Vector3;
 
 /**
  * A Collider is a component which can allow an object to collide with other objects.
@@ -16,7 +16,8 @@ import com.badlogic.gdx.math.Vector3;
  * A real-world game engine might have a ColliderManager component for complex objects, with the ability to add one or more Colliders.
  * (See TimerManager vs. Timer for how that might work.)
  */
-public class Collider extends Component {
+@UpdateAccess(readsObject2D = true, parallelInstances = true)
+public class Collider extends Component implements Snapshottable {
 	
 	/**
 	 * Returns a new Collider that has the vertices of a rectangle of the given width and height.
@@ -70,40 +71,75 @@ public class Collider extends Component {
 
 	protected float[] vertices; // Array of vertices in the format x, y, x, y...
 
+	// Cache of the transformed vertices, and what they were calculated from
+	private float[] transformed;
+	private Object2D transformed_obj;
+	private long transformed_version;
+	private float[] transformed_source;
+
 	public Collider(float... vertices) {
 		this.vertices = vertices;
 	}
 
+	private Collider() { // Used by World.restore
+		this(new float[0]);
+	}
+
 	public void update(float delta) {}
 
 	/**
-	 * Returns a float array of the vertices, as if they were transformed by their owner's location, rotation, and scale.
+	 * Returns a float array of the vertices, as if they were transformed by their owner's location, rotation, and scale (in world space, if it's attached to a parent).
 	 * The array is in the format x, y, x, y...
 	 * This is used in collision calculations as well as in drawing.
+	 * The result is cached until the owner's world transform changes (see Object2D.getWorldTransformVersion), and the same array is returned until then.
+	 * The array is read-only: Don't modify it, and copy it if you need to change it. It's never rewritten after being returned, though;
+	 * once the owner moves, a new array is made, so an array you hold on to keeps the vertices as they were (and is safe to read from other threads).
+	 * If you change the contents of the vertices array in a derived class, call invalidate() afterward.
 	 */
-	public float[] getTransformedVertices() {
+	public synchronized float[] getTransformedVertices() {
 		Optional<Object2D> opt_obj = TileBeanEngine.world.tryGet(getOwner());
 		if (!opt_obj.isPresent()) return vertices.clone();
 		Object2D obj = opt_obj.get();
 
-		// Get the parent object's transformation matrix, so we can calculate where our Collider's vertices are in that space.
-		Matrix4 m = new Matrix4(); // If this engine supported embedded objects, this would be your parent matrix, not an identity matrix.
-		m.translate(obj.x, obj.y, 0);
-		m.rotate(0, 0, 1, TBEMath.toDegrees(obj.rotation)); // libGDX operates in degrees instead of radians, which is incredibly uncommon and a major pitfall in my opinion.
-		m.scale(obj.scale_x, obj.scale_y, 0);
-		Matrix4 m_bak = m.cpy();
-		float[] ret = new float[vertices.length];
-		Vector3 v = new Vector3();
+		long version = obj.getWorldTransformVersion();
+		if (obj == transformed_obj && version == transformed_version && vertices == transformed_source) return transformed;
+
+		// Transform each vertex by the owner's world transform, which includes the transforms of any objects it's attached to.
+		Affine2 m = obj.getWorldTransform();
+		float[] transformed = new float[vertices.length]; // Not reused, since callers may still hold the previous array
 		for (int i = 0; i < vertices.length; i += 2) {
-			// Apply the transformation matrix to our Collider's vertices. The result we want is the translation.
-			m.translate(vertices[i], vertices[i + 1], 0);
-			m.getTranslation(v);
-			ret[i] = v.x;
-			ret[i + 1] = v.y;
-			m.set(m_bak);
+			float vx = vertices[i];
+			float vy = vertices[i + 1];
+			transformed[i] = m.m00 * vx + m.m01 * vy + m.m02;
+			transformed[i + 1] = m.m10 * vx + m.m11 * vy + m.m12;
+		}
+
+		transformed_obj = obj;
+		transformed_version = version;
+		transformed_source = vertices;
+		this.transformed = transformed;
+		return transformed;
+	}
+
+	/**
+	 * Forces the transformed vertices to be recalculated the next time they're needed.
+	 */
+	public synchronized void invalidate() {
+		transformed_obj = null;
+	}
+
+	public void writeSnapshot(ByteBuffer buffer) {
+		buffer.putInt(vertices.length);
+		for (float v : vertices) {
+			buffer.putFloat(v);
 		}
+	}
 
-		return ret;
+	public void readSnapshot(ByteBuffer buffer) {
+		vertices = new float[buffer.getInt()];
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = buffer.getFloat();
+		}
 	}
 
 }
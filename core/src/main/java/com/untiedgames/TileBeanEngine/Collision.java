@@ -3,6 +3,7 @@ package com.untiedgames.TileBeanEngine;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import com.badlogic.gdx.math.Affine2;
 import com.badlogic.gdx.math.Vector2;
 import com.untiedgames.TileBeanEngine.AssetSystem.TilesetAsset;
 import com.untiedgames.TileBeanEngine.AssetSystem.TilesetAsset.TileInfo;
@@ -169,11 +170,10 @@ public class Collision {
 		return ret;
 	}
 
-	private static Collider temp_collider = new Collider(); // We'll use this during tilemap collision.
 
 	/**
 	 * Detect potential collisions between a Collider and a Tilemap.
-	 * Collider vs. Tilemap collision does NOT support rotated Tilemaps, for simplicity.
+	 * The Tilemap can be moved, rotated, scaled, and attached to other objects; tiles collide where they're drawn.
 	 * Because a Tilemap has multiple tiles, it represents (effectively) a collection of colliders.
 	 * Therefore, an array is returned as there may be more than one collision detected.
 	 * The user can then process the array and react to the tiles that have been collided with.
@@ -186,8 +186,13 @@ public class Collision {
 		if (!opt_tileset_asset.isPresent()) return new TileCollisionInfo[0];
 		TilesetAsset tileset_asset = opt_tileset_asset.get();
 		
-		// First, we'll get the transformed vertices of the collider and determine its bounding box.
+		// First, we'll get the transformed vertices of the collider, map them into the Tilemap's space, and determine their bounding box there.
+		// In the Tilemap's space, tile (x, y) covers x * tile_width .. (x + 1) * tile_width, and likewise for y.
+		// Mapping with the inverse of the Tilemap's world transform accounts for its location, rotation, and scale, and those of any objects it's attached to.
 
+		Affine2 m = obj_tilemap.getWorldTransform();
+		if (m.det() == 0.0f) return new TileCollisionInfo[0]; // Scaled down to nothing
+		Affine2 inverse = new Affine2(m).inv();
 		float[] verts = collider.getTransformedVertices();
 		
 		float left = Float.MAX_VALUE;
@@ -195,33 +200,24 @@ public class Collision {
 		float top = Float.MAX_VALUE;
 		float bottom = -Float.MAX_VALUE;
 		for (int i = 0; i < verts.length; i += 2) {
-			if (verts[i] < left) left = verts[i];
-			if (verts[i] > right) right = verts[i];
-			if (verts[i + 1] < top) top = verts[i + 1];
-			if (verts[i + 1] > bottom) bottom = verts[i + 1];
+			float x = inverse.m00 * verts[i] + inverse.m01 * verts[i + 1] + inverse.m02;
+			float y = inverse.m10 * verts[i] + inverse.m11 * verts[i + 1] + inverse.m12;
+			if (x < left) left = x;
+			if (x > right) right = x;
+			if (y < top) top = y;
+			if (y > bottom) bottom = y;
 		}
 
 		// Now that we have a bounding box, we can use it to determine which tiles we're over.
-		
-		// Account for the Tilemap's position (and scale)
-		float tilemap_scaled_x = obj_tilemap.x * obj_tilemap.scale_x;
-		float tilemap_scaled_y = obj_tilemap.y * obj_tilemap.scale_y;
-		left -= tilemap_scaled_x;
-		right -= tilemap_scaled_x;
-		top -= tilemap_scaled_y;
-		bottom -= tilemap_scaled_y;
-
-		// Account for the Tilemap's scale
-		float tile_width = (float)tilemap.getTileWidth() * obj_tilemap.scale_x;
-		float tile_height = (float)tilemap.getTileHeight() * obj_tilemap.scale_y;
-
-		// Note: Rotated Tilemaps are not supported by this implementation of collision, so we don't account for rotation here.
+		float tile_width = (float)tilemap.getTileWidth();
+		float tile_height = (float)tilemap.getTileHeight();
 
 		ArrayList<TileCollisionInfo> ret = new ArrayList<>();
-		int y_start = Math.max(0, (int)(top / tile_height));
-		int y_end = Math.min(tilemap.getHeight() - 1, (int)(bottom / tile_height));
-		int x_start = Math.max(0, (int)(left / tile_width));
-		int x_end = Math.min(tilemap.getWidth() - 1, (int)(right / tile_width));
+		Collider temp_collider = new Collider(); // Each tile's shape, in world space. Made per call rather than shared, so colliders can be tested from several threads at once.
+		int y_start = Math.max(0, (int)Math.floor(top / tile_height));
+		int y_end = Math.min(tilemap.getHeight() - 1, (int)Math.floor(bottom / tile_height));
+		int x_start = Math.max(0, (int)Math.floor(left / tile_width));
+		int x_end = Math.min(tilemap.getWidth() - 1, (int)Math.floor(right / tile_width));
 		for (int y = y_start; y <= y_end; y++) {
 			for (int x = x_start; x <= x_end; x++) {
 				int id = tilemap.getTileID(x, y);
@@ -229,9 +225,12 @@ public class Collision {
 				TileInfo tile = tileset_asset.getTileInfo(id);
 				TileCollisionShape shape = PrimitiveTileCollisionShape.get(tile.getTileType());
 				if (temp_collider.vertices.length != shape.count()) temp_collider.vertices = new float[shape.count()];
-				for (int i = 0; i < shape.count(); i++) {
-					if (i % 2 == 0) temp_collider.vertices[i] = tilemap_scaled_x + (x + shape.get(i)) * tile_width;
-					else temp_collider.vertices[i] = tilemap_scaled_y + (y + shape.get(i)) * tile_height;
+				for (int i = 0; i < shape.count(); i += 2) {
+					// Back out to world space, where the collider is
+					float tx = (x + shape.get(i)) * tile_width;
+					float ty = (y + shape.get(i + 1)) * tile_height;
+					temp_collider.vertices[i] = m.m00 * tx + m.m01 * ty + m.m02;
+					temp_collider.vertices[i + 1] = m.m10 * tx + m.m11 * ty + m.m12;
 				}
 				CollisionInfo info = detect(collider, temp_collider);
 				if (info.exists) {
@@ -0,0 +1,181 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.Arrays;
+
+/**
+ * A CommandBuffer records structural changes to the World (removing objects, and adding or removing components) so they can be applied later, all at once.
+ * This makes it safe to spawn and despawn things from inside Component.update, while the engine is iterating over components.
+ * TileBeanEngine flushes the world's command buffer (see World.commands()) at the end of every logic step.
+ *
+ * Adding an object is the one change that happens right away: The object gets its handle immediately, so that components can be queued for it.
+ * The object won't have any of those components until the buffer is flushed.
+ * (When components are being updated in parallel, see UpdateScheduler, objects can't be added from the worker threads, since that isn't deferred.)
+ */
+public class CommandBuffer {
+
+	private static final int ADD_COMPONENT = 0;
+	private static final int REMOVE_COMPONENT = 1;
+	private static final int REMOVE = 2;
+
+	private World world;
+	private boolean allow_add; // False for the per-task buffers used by UpdateScheduler, where adding an object immediately isn't thread safe
+
+	// Recorded commands, stored in parallel arrays. Index i of each array describes command i.
+	private int[] ops = new int[64];
+	private Object2DHandle[] handles = new Object2DHandle[64];
+	private Component[] components = new Component[64];
+	private ComponentType[] types = new ComponentType[64];
+	private int count = 0;
+
+	private int[] add_counts = new int[16]; // Reused during flush to count added components per ComponentType ID
+
+	CommandBuffer(World world) {
+		this(world, true);
+	}
+
+	CommandBuffer(World world, boolean allow_add) {
+		this.world = world;
+		this.allow_add = allow_add;
+	}
+
+	/**
+	 * Adds an object to the world and returns a handle to it. (This happens immediately, see the class description.)
+	 */
+	public Object2DHandle add(Object2D obj) {
+		if (!allow_add) throw new Error("Objects can't be added from a component updated in parallel. Remove its UpdateAccess annotation to update it on the main thread.");
+		return world.add(obj);
+	}
+
+	/**
+	 * Adds an object to the world with the given name and returns a handle to it. (This happens immediately, see the class description.)
+	 */
+	public Object2DHandle add(Object2D obj, String name) {
+		if (!allow_add) throw new Error("Objects can't be added from a component updated in parallel. Remove its UpdateAccess annotation to update it on the main thread.");
+		return world.add(obj, name);
+	}
+
+	/**
+	 * Creates the given number of objects from a prefab, adds them to the world, and returns their handles. (This happens immediately, see the class description.)
+	 */
+	public Object2DHandle[] instantiate(Prefab prefab, int count) {
+		if (!allow_add) throw new Error("Objects can't be added from a component updated in parallel. Remove its UpdateAccess annotation to update it on the main thread.");
+		return world.instantiate(prefab, count);
+	}
+
+	/**
+	 * Records the removal of an object from the world.
+	 */
+	public void remove(Object2DHandle handle) {
+		record(REMOVE, handle, null, null);
+	}
+
+	/**
+	 * Records the addition of a component to an object.
+	 */
+	public void addComponent(Object2DHandle handle, Component component) {
+		if (component == null) return;
+		record(ADD_COMPONENT, handle, component, null);
+	}
+
+	/**
+	 * Records the removal of the component with the given class hash code from an object.
+	 */
+	public void removeComponent(Object2DHandle handle, int hash) {
+		ComponentType type = ComponentType.of(hash);
+		if (type == null) return; // No component of this class has ever been added
+		record(REMOVE_COMPONENT, handle, null, type);
+	}
+
+	/**
+	 * Records the removal of the component of the given class from an object.
+	 */
+	public void removeComponent(Object2DHandle handle, Class<? extends Component> component_class) {
+		record(REMOVE_COMPONENT, handle, null, ComponentType.of(component_class));
+	}
+
+	/**
+	 * Returns the number of commands waiting to be applied.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Applies all recorded commands to the world, in the order they were recorded, then empties the buffer.
+	 * Component stores are grown once up front to fit every component being added.
+	 * Commands recorded while flushing (for example, from Component.initialize) are applied as part of the same flush.
+	 * Components which were enabled, disabled, put to sleep, or woken since the last flush are also moved into or out of their store's active range.
+	 */
+	public void flush() {
+		if (count == 0) {
+			world.applyActivityChanges();
+			return;
+		}
+
+		// Count the components being added per type, so each store only has to grow once.
+		for (int i = 0; i < count; i++) {
+			if (ops[i] != ADD_COMPONENT) continue;
+			int id = ComponentType.of(components[i].getClass()).getID();
+			if (id >= add_counts.length) add_counts = Arrays.copyOf(add_counts, Math.max(id + 1, add_counts.length * 2));
+			add_counts[id]++;
+		}
+		for (int id = 0; id < add_counts.length; id++) {
+			if (add_counts[id] == 0) continue;
+			ComponentStore store = world.getStore(ComponentType.get(id));
+			store.ensureCapacity(store.size() + add_counts[id]);
+			add_counts[id] = 0;
+		}
+
+		for (int i = 0; i < count; i++) {
+			switch (ops[i]) {
+				case ADD_COMPONENT:
+					world.addComponent(handles[i], components[i]);
+					break;
+				case REMOVE_COMPONENT:
+					world.removeComponent(handles[i], types[i]);
+					break;
+				case REMOVE:
+					world.remove(handles[i]);
+					break;
+			}
+		}
+		clear();
+		world.applyActivityChanges();
+	}
+
+	/**
+	 * Moves all commands recorded in the other buffer to the end of this one, keeping their order, and empties the other buffer.
+	 */
+	void append(CommandBuffer other) {
+		for (int i = 0; i < other.count; i++) {
+			record(other.ops[i], other.handles[i], other.components[i], other.types[i]);
+		}
+		other.clear();
+	}
+
+	/**
+	 * Discards all recorded commands without applying them.
+	 */
+	public void clear() {
+		Arrays.fill(handles, 0, count, null);
+		Arrays.fill(components, 0, count, null);
+		Arrays.fill(types, 0, count, null);
+		count = 0;
+	}
+
+	private void record(int op, Object2DHandle handle, Component component, ComponentType type) {
+		if (handle == null) return;
+		if (count == ops.length) {
+			int capacity = count * 2;
+			ops = Arrays.copyOf(ops, capacity);
+			handles = Arrays.copyOf(handles, capacity);
+			components = Arrays.copyOf(components, capacity);
+			types = Arrays.copyOf(types, capacity);
+		}
+		ops[count] = op;
+		handles[count] = handle;
+		components[count] = component;
+		types[count] = type;
+		count++;
+	}
+
+}
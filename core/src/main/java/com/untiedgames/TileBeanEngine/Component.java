@@ -9,12 +9,15 @@ import java.util.Optional;
 public abstract class Component implements Comparable<Component> {
 
 	private Object2DHandle owner = Object2DHandle.empty();
+	private World world = null; // The world the owner is in, or null if the component has no owner
+	private boolean is_enabled = true;
 
 	/**
 	 * This method is only callable by World, which provides a "key" to access this method.
 	 */
 	public void setOwner(Object2DHandle owner, World.WorldKey k) {
 		this.owner = owner;
+		this.world = owner.isEmpty() ? k.getWorld() : null;
 	}
 
 	/** 
@@ -29,6 +32,23 @@ public abstract class Component implements Comparable<Component> {
 		return owner;
 	}
 
+	/**
+	 * Returns true if the component is enabled, false otherwise.
+	 */
+	public final boolean isEnabled() {
+		return is_enabled;
+	}
+
+	/**
+	 * Enables or disables the component. A disabled component isn't updated, but it's still drawn (if it's a Drawable) and can still be found in the world.
+	 * The change takes effect at the end of the current logic step, so it's safe to call from an update method.
+	 */
+	public final void setEnabled(boolean is_enabled) {
+		if (this.is_enabled == is_enabled) return;
+		this.is_enabled = is_enabled;
+		if (world != null) world.activityChanged(this);
+	}
+
 	/**
 	 * Performs logic each frame.
 	 */
@@ -0,0 +1,108 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * A ComponentQuery gives access to every component in the World which is of a given class, including derived classes.
+ * For example, world.query(Drawable.class) covers all Sprites, Tilemaps, Grids, and anything else that inherits from Drawable.
+ *
+ * The query remembers which component stores match its class, and only looks them up again when a new ComponentType is registered.
+ * Iterating a query walks those stores directly, so it doesn't allocate anything.
+ * Get a query from World.query rather than constructing one; the World keeps one per class.
+ */
+public class ComponentQuery<T extends Component> {
+
+	private World world;
+	private ComponentType type; // The queried type
+	private ComponentStore[] stores = new ComponentStore[0]; // All stores whose class is the queried class or derives from it
+	private int type_count = -1; // The number of registered component types when the stores were last gathered
+
+	ComponentQuery(World world, ComponentType type) {
+		this.world = world;
+		this.type = type;
+	}
+
+	/**
+	 * Returns the number of components matched by this query.
+	 */
+	public int size() {
+		refresh();
+		int ret = 0;
+		for (ComponentStore store : stores) {
+			ret += store.size();
+		}
+		return ret;
+	}
+
+	/**
+	 * Performs the given action for each component matched by this query.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Consumer<? super T> action) {
+		refresh();
+		for (ComponentStore store : stores) {
+			for (int i = 0; i < store.size(); i++) {
+				action.accept((T)store.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Adds each component matched by this query to the given collection.
+	 * Pass in a collection you keep around between frames to avoid allocating a new one each time.
+	 */
+	@SuppressWarnings("unchecked")
+	public void addTo(Collection<? super T> collection) {
+		refresh();
+		for (ComponentStore store : stores) {
+			for (int i = 0; i < store.size(); i++) {
+				collection.add((T)store.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the component matched by this query which is owned by the given object, or null if there isn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(Object2DHandle handle) {
+		refresh();
+		for (ComponentStore store : stores) {
+			Component c = store.get(handle);
+			if (c != null) return (T)c;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of stores matched by this query. Used by the engine to iterate stores directly.
+	 */
+	int storeCount() {
+		refresh();
+		return stores.length;
+	}
+
+	/**
+	 * Returns the matched store at the given index, in the range 0 .. storeCount() - 1.
+	 */
+	ComponentStore store(int index) {
+		return stores[index];
+	}
+
+	/**
+	 * Gathers the matching stores again if a component class has been registered since the last time.
+	 */
+	private void refresh() {
+		int count = ComponentType.count();
+		if (type_count == count) return;
+		ArrayList<ComponentStore> list = new ArrayList<>();
+		for (int id = 0; id < count; id++) {
+			ComponentType t = ComponentType.get(id);
+			if (t.isA(type)) list.add(world.getStore(t));
+		}
+		stores = list.toArray(new ComponentStore[list.size()]);
+		type_count = count;
+	}
+
+}
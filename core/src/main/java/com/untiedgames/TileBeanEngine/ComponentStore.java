@@ -0,0 +1,162 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.Arrays;
+
+/**
+ * ComponentStore holds every component of one concrete class in the World.
+ * It's a "sparse set": The components are packed together in a dense array, which is quick to loop over,
+ * and a second (sparse) array maps the index of an object handle to that object's slot in the dense array.
+ * That makes get, has, add, and remove all O(1) no matter how many components of the type exist.
+ * Note that removal moves the last component into the removed slot, so the order of the dense array is not stable.
+ *
+ * The dense array is split in two: Active components (enabled, and owned by an object that isn't sleeping) come first, from 0 to activeCount() - 1,
+ * and inactive ones come after. The engine only updates the active range, so inactive components cost nothing per logic step.
+ */
+class ComponentStore {
+
+	private Component[] dense; // The components themselves, packed with no gaps from 0 to size - 1.
+	private int[] sparse; // Map of object handle index to slot in the dense array. -1 means the object has no component in this store.
+	private int size = 0;
+	private int active = 0; // The number of active components, which are packed at the start of the dense array
+
+	ComponentStore() {
+		dense = new Component[16];
+		sparse = new int[16];
+		Arrays.fill(sparse, -1);
+	}
+
+	/**
+	 * Returns the number of components in this store.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of active components in this store. They're in slots 0 .. activeCount() - 1.
+	 */
+	int activeCount() {
+		return active;
+	}
+
+	/**
+	 * Returns the component in the given dense slot. Used for iteration, in the range 0 .. size() - 1.
+	 */
+	Component get(int slot) {
+		return dense[slot];
+	}
+
+	/**
+	 * Returns the component owned by the given object, or null if it doesn't have one in this store.
+	 */
+	Component get(Object2DHandle handle) {
+		int index = handle.index;
+		if (index >= sparse.length) return null;
+		int slot = sparse[index];
+		if (slot == -1) return null;
+		Component c = dense[slot];
+		if (c.getOwner().generation != handle.generation) return null; // Slot belongs to an older object which used the same index
+		return c;
+	}
+
+	/**
+	 * Returns true if the given object has a component in this store, false otherwise.
+	 */
+	boolean has(Object2DHandle handle) {
+		return get(handle) != null;
+	}
+
+	/**
+	 * Adds an active component to the store. The component's owner must already be set.
+	 */
+	void add(Component component) {
+		add(component, true);
+	}
+
+	/**
+	 * Adds a component to the store, in the active or inactive range. The component's owner must already be set.
+	 */
+	void add(Component component, boolean is_active) {
+		int index = component.getOwner().index;
+		if (index >= sparse.length) {
+			int old_length = sparse.length;
+			sparse = Arrays.copyOf(sparse, Math.max(index + 1, old_length * 2));
+			Arrays.fill(sparse, old_length, sparse.length, -1);
+		}
+		ensureCapacity(size + 1);
+		put(component, size);
+		size++;
+		if (is_active) {
+			swap(size - 1, active);
+			active++;
+		}
+	}
+
+	/**
+	 * Removes the component owned by the given object and returns it, or returns null if there was nothing to remove.
+	 * Another component is moved into the freed slot (at most two are moved, to keep the active range packed).
+	 */
+	Component remove(Object2DHandle handle) {
+		Component c = get(handle);
+		if (c == null) return null;
+		int slot = sparse[handle.index];
+		if (slot < active) {
+			// Fill the hole with the last active component, which leaves the hole at the end of the active range instead
+			active--;
+			swap(slot, active);
+			slot = active;
+		}
+		int last = size - 1;
+		if (slot != last) put(dense[last], slot);
+		dense[last] = null;
+		sparse[handle.index] = -1;
+		size--;
+		return c;
+	}
+
+	/**
+	 * Moves the component owned by the given object into the active or inactive range.
+	 */
+	void setActive(Object2DHandle handle, boolean is_active) {
+		if (get(handle) == null) return;
+		int slot = sparse[handle.index];
+		if (is_active && slot >= active) {
+			swap(slot, active);
+			active++;
+		} else if (!is_active && slot < active) {
+			active--;
+			swap(slot, active);
+		}
+	}
+
+	private void put(Component component, int slot) {
+		dense[slot] = component;
+		sparse[component.getOwner().index] = slot;
+	}
+
+	private void swap(int slot_a, int slot_b) {
+		if (slot_a == slot_b) return;
+		Component a = dense[slot_a];
+		put(dense[slot_b], slot_a);
+		put(a, slot_b);
+	}
+
+	/**
+	 * Makes sure the dense array can hold at least the given number of components without growing.
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > dense.length) {
+			dense = Arrays.copyOf(dense, Math.max(capacity, dense.length * 2));
+		}
+	}
+
+	/**
+	 * Removes all components from the store.
+	 */
+	void clear() {
+		Arrays.fill(dense, 0, size, null);
+		Arrays.fill(sparse, -1);
+		size = 0;
+		active = 0;
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * ComponentType assigns every component class a small, dense integer ID, which the World uses to index its component stores directly.
+ * Each type also has a precomputed bitset of the IDs of every class along its inheritance path to Component,
+ * so checking whether, say, Sprite is a Drawable is a single bit test.
+ *
+ * Types are registered the first time they're asked for, and are shared by all Worlds.
+ * A class's superclasses are always registered before it, so they always have smaller IDs.
+ */
+public final class ComponentType {
+
+	private static final ClassValue<ComponentType> by_class = new ClassValue<ComponentType>() {
+		@SuppressWarnings("unchecked")
+		protected ComponentType computeValue(Class<?> c) {
+			return register((Class<? extends Component>)c);
+		}
+	};
+	private static final HashMap<Class<?>, ComponentType> registered = new HashMap<>(); // Guards against registering a class twice if two threads ask for it at once
+	private static final ArrayList<ComponentType> by_id = new ArrayList<>();
+	private static final HashMap<Integer, ComponentType> by_hash = new HashMap<>(); // Map of class hash codes to types, for the older hash code based World methods
+	private static volatile int count = 0;
+
+	private final int id;
+	private final Class<? extends Component> component_class;
+	private final ComponentType parent; // The type of the superclass, or null for Component itself
+	private final long[] ancestors; // Bitset of the IDs of this type and every type it inherits from
+	private final String name;
+
+	private ComponentType(int id, Class<? extends Component> component_class, ComponentType parent) {
+		this.id = id;
+		this.component_class = component_class;
+		this.parent = parent;
+		if (parent == null) ancestors = new long[(id >>> 6) + 1];
+		else ancestors = Arrays.copyOf(parent.ancestors, Math.max(parent.ancestors.length, (id >>> 6) + 1));
+		ancestors[id >>> 6] |= 1L << id;
+		String simple_name = component_class.getSimpleName();
+		name = simple_name.isEmpty() ? component_class.getName() : simple_name; // Anonymous classes have no simple name
+	}
+
+	/**
+	 * Returns the type of the given component class, registering it (and its superclasses) if needed.
+	 */
+	public static ComponentType of(Class<? extends Component> component_class) {
+		return by_class.get(component_class);
+	}
+
+	/**
+	 * Returns the type with the given class hash code, or null if no class with that hash code has been registered yet.
+	 */
+	public static synchronized ComponentType of(int hash) {
+		return by_hash.get(hash);
+	}
+
+	/**
+	 * Returns the type with the given ID. The ID must be less than count().
+	 */
+	public static synchronized ComponentType get(int id) {
+		return by_id.get(id);
+	}
+
+	/**
+	 * Returns the number of registered types. Every type ID is less than this.
+	 */
+	public static int count() {
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static synchronized ComponentType register(Class<? extends Component> component_class) {
+		ComponentType existing = registered.get(component_class);
+		if (existing != null) return existing;
+		ComponentType parent = null;
+		if (component_class != Component.class) parent = of((Class<? extends Component>)component_class.getSuperclass());
+		ComponentType ret = new ComponentType(by_id.size(), component_class, parent);
+		by_id.add(ret);
+		registered.put(component_class, ret);
+		if (!by_hash.containsKey(component_class.hashCode())) by_hash.put(component_class.hashCode(), ret);
+		count = by_id.size();
+		return ret;
+	}
+
+	public int getID() {
+		return id;
+	}
+
+	public Class<? extends Component> getComponentClass() {
+		return component_class;
+	}
+
+	/**
+	 * Returns the name of the component class, without its package. (Computed once, so it's free to call every frame, such as for Profiler markers.)
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the type of this type's superclass, or null if this is the type of Component.
+	 */
+	public ComponentType getParent() {
+		return parent;
+	}
+
+	/**
+	 * Returns true if this type is the given type or inherits from it, false otherwise.
+	 */
+	public boolean isA(ComponentType other) {
+		int word = other.id >>> 6;
+		if (word >= ancestors.length) return false;
+		return (ancestors[word] & (1L << other.id)) != 0;
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * ConcurrentGenArray is a GenArray which can be used from several threads at once.
+ * For example, a background loader can add assets while worker threads look up handles and the main thread removes things.
+ *
+ * Reading (get and expired) never locks or waits: Each entry is an immutable Slot holding a generation, key, and item,
+ * so a reader does a single volatile read of the slot and compares generations. Whatever it sees is a consistent entry,
+ * either from before or after any concurrent change.
+ * Writing (add, remove, clear) is synchronized. Writers also keep the free list, so add and remove are O(1), as in GenArray.
+ *
+ * forEach visits the entries as they are while it runs. It's safe to call during writes, but it may or may not see items added or removed meanwhile.
+ * (For single-threaded use, like the World, GenArray is faster.)
+ */
+public class ConcurrentGenArray<T, U extends GenArrayKey> {
+
+	/**
+	 * One entry of the array. Replaced as a whole whenever the entry changes, so readers never see a half-written entry.
+	 */
+	private static final class Slot<T, U> {
+		final int generation;
+		final U key;
+		final T item; // null if the entry is empty
+
+		Slot(int generation, U key, T item) {
+			this.generation = generation;
+			this.key = key;
+			this.item = item;
+		}
+	}
+
+	private GenArrayKey.Factory<U> factory;
+	private volatile AtomicReferenceArray<Slot<T, U>> slots = new AtomicReferenceArray<>(16); // Replaced with a larger copy when the array grows
+	private volatile int size = 0; // The number of entries in use, empty or not
+	private volatile int count = 0; // The number of entries which hold items
+
+	// Only touched by writers, while holding the lock
+	private int[] next_free = new int[16]; // For each empty entry, the index of the next empty entry in the free list, or -1 at the end
+	private int free_head = -1; // The most recently emptied entry, which add will use next. -1 if there are no empty entries.
+
+	public ConcurrentGenArray(GenArrayKey.Factory<U> factory) {
+		this.factory = factory;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of items in the array (the number of entries which aren't empty).
+	 */
+	public int count() {
+		return count;
+	}
+
+	public boolean expired(U key) {
+		if (key == null) return true;
+		return slot(key.index, key.generation) == null;
+	}
+
+	/**
+	 * Returns true if the given packed key (see GenArrayKey.pack) no longer refers to an entry, false otherwise.
+	 */
+	public boolean expired(long packed_key) {
+		return slot(GenArrayKey.packedIndex(packed_key), GenArrayKey.packedGeneration(packed_key)) == null;
+	}
+
+	/**
+	 * Returns the item the key refers to, or null if the key is invalid or expired. Never blocks.
+	 */
+	public T get(U key) {
+		if (key == null) return null;
+		Slot<T, U> slot = slot(key.index, key.generation);
+		return slot == null ? null : slot.item;
+	}
+
+	/**
+	 * Returns the item the packed key (see GenArrayKey.pack) refers to, or null if the key is invalid or expired. Never blocks.
+	 */
+	public T get(long packed_key) {
+		Slot<T, U> slot = slot(GenArrayKey.packedIndex(packed_key), GenArrayKey.packedGeneration(packed_key));
+		return slot == null ? null : slot.item;
+	}
+
+	// Returns the slot at the index if its generation matches, null otherwise
+	private Slot<T, U> slot(int index, int generation) {
+		AtomicReferenceArray<Slot<T, U>> slots = this.slots;
+		if (index < 0 || index >= slots.length()) return null;
+		Slot<T, U> slot = slots.get(index);
+		if (slot == null || slot.generation != generation) return null;
+		return slot;
+	}
+
+	public synchronized U add(T item) {
+		if (item == null) return factory.create(Integer.MAX_VALUE, Integer.MAX_VALUE); // An empty key
+
+		if (free_head != -1) {
+			// Reuse an empty entry
+			int index = free_head;
+			free_head = next_free[index];
+			Slot<T, U> old = slots.get(index);
+			slots.set(index, new Slot<>(old.generation, old.key, item));
+			count++;
+			return old.key;
+		}
+
+		int index = size;
+		ensureCapacity(index + 1);
+		U key = factory.create(index, 0);
+		slots.set(index, new Slot<>(0, key, item));
+		size = index + 1;
+		count++;
+		return key;
+	}
+
+	public synchronized void remove(U key) {
+		if (key == null) return;
+		Slot<T, U> slot = slot(key.index, key.generation);
+		if (slot == null || slot.item == null) return; // Invalid, expired, or already empty
+		empty(key.index, slot);
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < size; i++) {
+			Slot<T, U> slot = slots.get(i);
+			if (slot.item != null) empty(i, slot);
+		}
+	}
+
+	/**
+	 * Performs the given action for the key and item of every entry which holds an item.
+	 * Safe to call while other threads add and remove items, but changes made meanwhile may or may not be seen.
+	 */
+	public void forEach(BiConsumer<? super U, ? super T> action) {
+		AtomicReferenceArray<Slot<T, U>> slots = this.slots;
+		int size = Math.min(this.size, slots.length());
+		for (int i = 0; i < size; i++) {
+			Slot<T, U> slot = slots.get(i);
+			if (slot != null && slot.item != null) action.accept(slot.key, slot.item);
+		}
+	}
+
+	// Bumps the generation of an entry, which expires every key to it, and puts it on the free list
+	private void empty(int index, Slot<T, U> slot) {
+		int generation = slot.generation + 1;
+		slots.set(index, new Slot<>(generation, factory.create(index, generation), null));
+		next_free[index] = free_head;
+		free_head = index;
+		count--;
+	}
+
+	private void ensureCapacity(int capacity) {
+		AtomicReferenceArray<Slot<T, U>> old = slots;
+		if (capacity <= old.length()) return;
+		capacity = Math.max(capacity, old.length() * 2);
+		AtomicReferenceArray<Slot<T, U>> grown = new AtomicReferenceArray<>(capacity);
+		for (int i = 0; i < old.length(); i++) {
+			grown.set(i, old.get(i));
+		}
+		int[] grown_free = new int[capacity];
+		System.arraycopy(next_free, 0, grown_free, 0, next_free.length);
+		next_free = grown_free;
+		slots = grown; // Published only once it's complete. Readers still holding the old array see the same entries, since no writer changes it meanwhile.
+	}
+
+}
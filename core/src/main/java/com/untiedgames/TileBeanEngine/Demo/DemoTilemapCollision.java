@@ -3,6 +3,7 @@ package com.untiedgames.TileBeanEngine.Demo;
 import java.util.Optional;
 
 import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.math.Affine2;
 import com.untiedgames.TileBeanEngine.Collider;
 import com.untiedgames.TileBeanEngine.Collision;
 import com.untiedgames.TileBeanEngine.Game;
@@ -91,7 +92,7 @@ public class DemoTilemapCollision extends Game {
 	 * Removes any existing Collider from the second object, and adds a new one based on the demo's current settings.
 	 */
 	private void setupCollision() {
-		TileBeanEngine.world.removeComponent(obj_handle, Collider.class.hashCode());
+		TileBeanEngine.world.removeComponent(obj_handle, Collider.class);
 
 		// Add a Collider component to the second object.
 		Collider c;
@@ -111,9 +112,9 @@ public class DemoTilemapCollision extends Game {
 
 	public void update(float delta) {
 		Object2D obj = TileBeanEngine.world.get(obj_handle);
-		Tilemap tilemap = (Tilemap)TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class.hashCode());
-		Collider collider = (Collider)TileBeanEngine.world.getComponent(obj_handle, Collider.class.hashCode());
-		Grid grid = (Grid)TileBeanEngine.world.getComponent(obj_grid_handle, Grid.class.hashCode());
+		Tilemap tilemap = TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class);
+		Collider collider = TileBeanEngine.world.getComponent(obj_handle, Collider.class);
+		Grid grid = TileBeanEngine.world.getComponent(obj_grid_handle, Grid.class);
 
 		// Player movement
 		if (TileBeanEngine.input.isKeyDown(Keys.LEFT)) {
@@ -161,7 +162,7 @@ public class DemoTilemapCollision extends Game {
 	public void runGUI() {
 		ImGui.textWrapped("This is a demonstration of Collider vs. Tilemap collision.\nUse the keyboard's left/right/up/down arrows to move the Collider.\n(*If you interact with the GUI you may need to click back into the game area before it accepts keyboard input again.)");
 
-		Tilemap tilemap = (Tilemap)TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class.hashCode());
+		Tilemap tilemap = TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class);
 		
 		ImBoolean show_collision = new ImBoolean(tilemap.show_collision);
 		if (ImGui.checkbox("Show Tilemap collision", show_collision)) {
@@ -240,11 +241,15 @@ public class DemoTilemapCollision extends Game {
 	 * This function re-does a bit of work done in Collision.detect, just so we can show grid highlights for each tile that the collider is overlapping.
 	 */
 	private void updateGridHighlights() {
-		Collider collider = (Collider)TileBeanEngine.world.getComponent(obj_handle, Collider.class.hashCode());
+		Collider collider = TileBeanEngine.world.getComponent(obj_handle, Collider.class);
 		Object2D obj_tilemap = TileBeanEngine.world.get(obj_tilemap_handle);
-		Tilemap tilemap = (Tilemap)TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class.hashCode());
-		Grid grid = (Grid)TileBeanEngine.world.getComponent(obj_grid_handle, Grid.class.hashCode());
+		Tilemap tilemap = TileBeanEngine.world.getComponent(obj_tilemap_handle, Tilemap.class);
+		Grid grid = TileBeanEngine.world.getComponent(obj_grid_handle, Grid.class);
 
+		// Map the collider into the Tilemap's space, the same way Collision.detect does
+		Affine2 m = obj_tilemap.getWorldTransform();
+		if (m.det() == 0.0f) return;
+		Affine2 inverse = new Affine2(m).inv();
 		float[] verts = collider.getTransformedVertices();
 		
 		float left = Float.MAX_VALUE;
@@ -252,23 +257,20 @@ public class DemoTilemapCollision extends Game {
 		float top = Float.MAX_VALUE;
 		float bottom = -Float.MAX_VALUE;
 		for (int i = 0; i < verts.length; i += 2) {
-			if (verts[i] < left) left = verts[i];
-			if (verts[i] > right) right = verts[i];
-			if (verts[i + 1] < top) top = verts[i + 1];
-			if (verts[i + 1] > bottom) bottom = verts[i + 1];
+			float x = inverse.m00 * verts[i] + inverse.m01 * verts[i + 1] + inverse.m02;
+			float y = inverse.m10 * verts[i] + inverse.m11 * verts[i + 1] + inverse.m12;
+			if (x < left) left = x;
+			if (x > right) right = x;
+			if (y < top) top = y;
+			if (y > bottom) bottom = y;
 		}
 
-		left -= obj_tilemap.x * obj_tilemap.scale_x;
-		right -= obj_tilemap.x * obj_tilemap.scale_x;
-		top -= obj_tilemap.y * obj_tilemap.scale_y;
-		bottom -= obj_tilemap.y * obj_tilemap.scale_y;
-
-		float tile_width = (float)tilemap.getTileWidth() * obj_tilemap.scale_x;
-		float tile_height = (float)tilemap.getTileHeight() * obj_tilemap.scale_y;
+		float tile_width = (float)tilemap.getTileWidth();
+		float tile_height = (float)tilemap.getTileHeight();
 
 		grid.highlights.clear();
-		for (int y = (int)(top / tile_height); y <= (int)(bottom / tile_height); y++) {
-			for (int x = (int)(left / tile_width); x <= (int)(right / tile_width); x++) {
+		for (int y = (int)Math.floor(top / tile_height); y <= (int)Math.floor(bottom / tile_height); y++) {
+			for (int x = (int)Math.floor(left / tile_width); x <= (int)Math.floor(right / tile_width); x++) {
 				GridHighlight highlight = new GridHighlight(x, y);
 				grid.highlights.add(highlight);
 			}
@@ -1,6 +1,7 @@
 package com.untiedgames.TileBeanEngine;
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Rectangle;
 
 /**
  * Drawable is the base class for anything that can be displayed in TileBeanEngine.
@@ -8,6 +9,33 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
  */
 public abstract class Drawable extends Component {
 
+	// Kept by the World's RenderList
+	int render_index = -1; // Position in the render list, or -1 if not in one
+	Object2D render_object; // The owner
+	float render_z; // The owner's z as of the last RenderList update
+	boolean render_visible; // The owner's is_visible as of the last RenderList update
+	int render_texture; // getTextureKey() as of the last RenderList update
+	long render_key; // The sort key built from render_z and render_texture
+	int render_sequence; // Order this drawable was added to the render list in
+
 	public abstract void draw(SpriteBatch spritebatch);
 
+	/**
+	 * Returns a number identifying the texture this drawable will draw with next, or 0 if it's unknown or it draws with several.
+	 * Drawables at the same z are drawn grouped by this number, so the SpriteBatch switches textures (and flushes) less often.
+	 * Override it if your drawable draws a single texture, for example by returning texture.getTextureObjectHandle().
+	 */
+	public int getTextureKey() {
+		return 0;
+	}
+
+	/**
+	 * Sets the given rectangle to the area this drawable covers, in world coordinates (an axis-aligned box around everything it draws), and returns true.
+	 * Drawables whose bounds are entirely outside the camera's view are skipped without being drawn.
+	 * Returns false if the bounds aren't known, in which case the drawable is always drawn. That's the default, so override this to enable culling.
+	 */
+	public boolean getBounds(Rectangle bounds) {
+		return false;
+	}
+
 }
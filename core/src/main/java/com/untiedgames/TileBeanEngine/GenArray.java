@@ -1,111 +1,359 @@
 package com.untiedgames.TileBeanEngine;
-import java.util.ArrayList;
-import java.util.Optional;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.function.BiConsumer;
 
 /**
  * GenArray is a generational array collection. (Also found in the wild as "generational vectors," from C++.)
  * A generational array returns keys (handles) when you add things to it, and you use those keys to retrieve entries in the array.
  * The usefulness of a generational array is that when items are removed or replaced in the collection, any handles which have been given out
  * become invalidated, and can no longer be used to retrieve an entry.
+ *
+ * Internally, entries are stored in plain arrays: An int array of generations, and an array of the items themselves (null where empty).
+ * Keys are created by the GenArrayKey.Factory given to the constructor, and can also be packed into longs (see GenArrayKey.pack).
+ *
+ * Empty entries are chained together in a free list, so add and remove are always O(1), no matter how large or fragmented the array gets.
+ * By default the most recently freed entry is reused first (LIFO), which keeps things compact. With setFIFO(true), the entry freed longest ago
+ * is reused first instead, which spreads reuse (and generation increments) across all of the free entries.
+ *
+ * The indexes of the entries which hold items are also kept packed in a separate list. Use live() or forEach to visit only those,
+ * so iteration costs depend on count() (the number of items) rather than size() (the number of entries, empty or not).
  */
 public class GenArray<T, U extends GenArrayKey> implements Iterable<GenArrayEntry<T, U>> {
 
-	private Class<U> u_class;
-	private ArrayList<GenArrayEntry<T, U>> contents;
-	private int first_free = Integer.MAX_VALUE; // Represents the first index which *might* be free to put something in.
+	private GenArrayKey.Factory<U> factory;
+	private int[] generations = new int[16]; // The current generation of each entry. A key is valid only if its generation matches.
+	private int[] max_generations = new int[16]; // The highest generation each entry has ever had, so an entry never goes back to a generation a key may have been given out with
+	private Object[] data = new Object[16]; // The item in each entry, or null if the entry is empty
+	private Object[] keys = new Object[16]; // The current key of each entry, so the same key object can be handed out repeatedly
+	private int[] next_free = new int[16]; // For each empty entry, the index of the next empty entry in the free list, or -1 at the end
+	private int[] live = new int[16]; // Indexes of the entries which hold items, packed from 0 to count - 1, in no particular order
+	private int[] live_position = new int[16]; // For each entry which holds an item, its position in live
+	private int size = 0; // The number of entries in use, empty or not
+	private int count = 0; // The number of entries which hold items
+	private int free_head = -1; // The first entry in the free list, which add will use next. -1 if there are no empty entries.
+	private int free_tail = -1; // The last entry in the free list
+	private boolean is_free_list_stale = false; // Set by reset, since place fills entries without unlinking them. The list is rebuilt when next needed.
+	private boolean is_fifo = false;
+	private int generation_floor = 0; // The generation new entries start at. Raised by trim, so a stale key can never match a recreated entry.
 
-	public GenArray(Class<U> u_class) {
-		this.u_class = u_class;
-		contents = new ArrayList<GenArrayEntry<T, U>>();
+	public GenArray(GenArrayKey.Factory<U> factory) {
+		this.factory = factory;
 	}
 
 	public int size() {
-		return contents.size();
+		return size;
+	}
+
+	/**
+	 * Returns the number of items in the array (the number of entries which aren't empty).
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Sets the order in which empty entries are reused: true for first-in-first-out, false (the default) for last-in-first-out.
+	 */
+	public void setFIFO(boolean is_fifo) {
+		if (this.is_fifo == is_fifo) return;
+		this.is_fifo = is_fifo;
+		rebuildFreeList();
+	}
+
+	/**
+	 * Makes sure the array can hold at least the given number of entries without growing.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= generations.length) return;
+		capacity = Math.max(capacity, generations.length * 2);
+		generations = Arrays.copyOf(generations, capacity);
+		max_generations = Arrays.copyOf(max_generations, capacity);
+		data = Arrays.copyOf(data, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		next_free = Arrays.copyOf(next_free, capacity);
+		live = Arrays.copyOf(live, capacity);
+		live_position = Arrays.copyOf(live_position, capacity);
+	}
+
+	/**
+	 * Removes empty entries from the end of the array and releases the memory they used. Call this after removing a large number of items.
+	 * Keys to the removed entries stay expired, even if the array grows again later.
+	 */
+	public void trim() {
+		int new_size = size;
+		while (new_size > 0 && data[new_size - 1] == null) {
+			new_size--;
+			generation_floor = Math.max(generation_floor, max_generations[new_size] + 1);
+		}
+		Arrays.fill(keys, new_size, size, null);
+		size = new_size;
+		int capacity = Math.max(16, size);
+		if (capacity < generations.length) {
+			generations = Arrays.copyOf(generations, capacity);
+			max_generations = Arrays.copyOf(max_generations, capacity);
+			data = Arrays.copyOf(data, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			next_free = Arrays.copyOf(next_free, capacity);
+			live = Arrays.copyOf(live, capacity);
+			live_position = Arrays.copyOf(live_position, capacity);
+		}
+		rebuildFreeList();
 	}
 
 	public void clear() {
-		for (GenArrayEntry<T, U> entry : contents) {
-			if (entry.hasValue()) {
-				entry.key.generation++;
-				entry.data = Optional.empty();
+		for (int i = 0; i < size; i++) {
+			if (data[i] != null) {
+				nextGeneration(i);
+				data[i] = null;
 			}
 		}
-		first_free = 0;
+		count = 0;
+		rebuildFreeList();
+	}
+
+	/**
+	 * Empties the array and resizes it to the given number of entries, with the given generations. Used to restore a saved state.
+	 * Fill the entries marked in is_live back in with place. They keep their saved generations, so keys saved along with them work again.
+	 * Every other entry gets a generation higher than any it has had, so no key given out since the state was saved can match whatever is added there later.
+	 */
+	public void reset(int[] generations, boolean[] is_live) {
+		Arrays.fill(data, 0, size, null);
+		for (int i = generations.length; i < size; i++) {
+			generation_floor = Math.max(generation_floor, max_generations[i] + 1); // Dropped entries, which may be added again later
+		}
+		ensureCapacity(generations.length);
+		for (int i = 0; i < generations.length; i++) {
+			int max_generation = i < size ? max_generations[i] : generation_floor - 1; // The highest generation a key to this entry could have
+			int generation = generations[i];
+			if (!is_live[i]) generation = Math.max(generation, max_generation + 1);
+			if (i >= size || this.generations[i] != generation) { // Otherwise, the existing key can be kept
+				this.generations[i] = generation;
+				keys[i] = factory.create(i, generation);
+			}
+			max_generations[i] = Math.max(max_generation, generation);
+		}
+		if (generations.length < size) {
+			Arrays.fill(keys, generations.length, size, null);
+		}
+		size = generations.length;
+		count = 0;
+		is_free_list_stale = true;
+	}
+
+	/**
+	 * Puts an item in the entry with the given index, keeping its current generation, and returns the entry's key. Used to restore a saved state.
+	 */
+	public U place(int index, T item) {
+		if (data[index] == null) addLive(index);
+		data[index] = item;
+		return key(index);
 	}
 
 	public boolean expired(U key) {
 		if (key == null) return true;
-		if (key.index >= contents.size()) return true;
-		if (contents.get(key.index).key.generation != key.generation) return true;
-		return false;
+		return expired(key.index, key.generation);
+	}
+
+	/**
+	 * Returns true if the given packed key (see GenArrayKey.pack) no longer refers to an entry, false otherwise.
+	 */
+	public boolean expired(long packed_key) {
+		return expired(GenArrayKey.packedIndex(packed_key), GenArrayKey.packedGeneration(packed_key));
+	}
+
+	private boolean expired(int index, int generation) {
+		if (index < 0 || index >= size) return true;
+		return generations[index] != generation;
 	}
 
-	@SuppressWarnings("unchecked")
 	public U add(T item) {
-		if (item == null) {
-			try {
-				return (U)u_class.getMethod("empty").invoke(null);
-			} catch(Exception e) {
-				throw new Error("Invalid \"empty()\" method invoked in GenArray.add"); // Your U class doesn't have the required "empty" method with signature empty()
-			}
-		}
+		if (item == null) return factory.create(Integer.MAX_VALUE, Integer.MAX_VALUE); // An empty key
 
-		for (int i = first_free; i < contents.size(); i++) {
-			GenArrayEntry<T, U> entry = contents.get(i);
-			if (!entry.data.isPresent()) {
-				first_free++;
-				entry.data = Optional.of(item);
-				return entry.key;
-			}
-		}
-		try {
-			U ret = u_class.getDeclaredConstructor(int.class, int.class).newInstance(contents.size(), 0);
-			contents.add(new GenArrayEntry<>(ret, Optional.of(item)));
-			return ret;
-		} catch(Exception e) {
-			throw new Error("Invalid constructor invoked in GenArray.add"); // Your U class doesn't have the required constructor signature U(int index, int generation)
+		if (is_free_list_stale) rebuildFreeList();
+		if (free_head != -1) {
+			// Reuse an empty entry
+			int index = free_head;
+			free_head = next_free[index];
+			if (free_head == -1) free_tail = -1;
+			data[index] = item;
+			addLive(index);
+			return key(index);
 		}
+
+		ensureCapacity(size + 1);
+		int index = size++;
+		generations[index] = generation_floor;
+		max_generations[index] = generation_floor;
+		keys[index] = factory.create(index, generation_floor);
+		data[index] = item;
+		addLive(index);
+		return key(index);
 	}
 
 	public void remove(U key) {
 		if (key == null) return;
-		if (key.index >= contents.size()) return; // Invalid
-		GenArrayEntry<T, U> entry = contents.get(key.index);
-		if (key.generation != entry.key.generation) return; // Expired
-		first_free = Math.min(first_free, key.index);
-		try {
-			entry.key = u_class.getDeclaredConstructor(int.class, int.class).newInstance(entry.key.index, entry.key.generation + 1);
-		} catch(Exception e) {
-			throw new Error("Invalid constructor invoked in GenArray.remove"); // Your U class doesn't have the required constructor signature U(int index, int generation)
+		if (expired(key)) return; // Invalid or expired
+		int index = key.index;
+		nextGeneration(index);
+		data[index] = null;
+		removeLive(index);
+		if (!is_free_list_stale) pushFree(index);
+	}
+
+	// Moves an entry past every generation it has had, expiring its current key
+	private void nextGeneration(int index) {
+		generations[index] = max_generations[index] + 1;
+		max_generations[index] = generations[index];
+		keys[index] = factory.create(index, generations[index]);
+	}
+
+	private void addLive(int index) {
+		live[count] = index;
+		live_position[index] = count;
+		count++;
+	}
+
+	// Swap-removes the entry from the live list
+	private void removeLive(int index) {
+		int position = live_position[index];
+		int last = live[--count];
+		live[position] = last;
+		live_position[last] = position;
+	}
+
+	private void pushFree(int index) {
+		if (free_head == -1) {
+			next_free[index] = -1;
+			free_head = index;
+			free_tail = index;
+		} else if (is_fifo) {
+			next_free[index] = -1;
+			next_free[free_tail] = index;
+			free_tail = index;
+		} else {
+			next_free[index] = free_head;
+			free_head = index;
+		}
+	}
+
+	/**
+	 * Links every empty entry into the free list again, so that lower indexes are reused first.
+	 */
+	private void rebuildFreeList() {
+		free_head = -1;
+		free_tail = -1;
+		if (is_fifo) {
+			for (int i = 0; i < size; i++) {
+				if (data[i] == null) pushFree(i);
+			}
+		} else {
+			for (int i = size - 1; i >= 0; i--) {
+				if (data[i] == null) pushFree(i);
+			}
+		}
+		is_free_list_stale = false;
+	}
+
+	/**
+	 * Returns the item the key refers to, or null if the key is invalid or expired.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(U key) {
+		if (key == null) return null;
+		if (expired(key.index, key.generation)) return null;
+		return (T)data[key.index];
+	}
+
+	/**
+	 * Returns the item the packed key (see GenArrayKey.pack) refers to, or null if the key is invalid or expired.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long packed_key) {
+		int index = GenArrayKey.packedIndex(packed_key);
+		if (expired(index, GenArrayKey.packedGeneration(packed_key))) return null;
+		return (T)data[index];
+	}
+
+	/**
+	 * Returns the current key of the entry at the given index, in the range 0 .. size() - 1. (The entry may be empty.)
+	 */
+	@SuppressWarnings("unchecked")
+	public U key(int index) {
+		return (U)keys[index];
+	}
+
+	/**
+	 * Returns the current key of the entry at the given index, packed into a long (see GenArrayKey.pack).
+	 */
+	public long packedKey(int index) {
+		return GenArrayKey.pack(index, generations[index]);
+	}
+
+	/**
+	 * Performs the given action for the key and item of every entry which holds an item, without allocating anything.
+	 * Don't add or remove items from inside the action.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<? super U, ? super T> action) {
+		for (int i = 0; i < count; i++) {
+			int index = live[i];
+			action.accept((U)keys[index], (T)data[index]);
 		}
-		entry.data = Optional.empty();
 	}
 
-	public Optional<T> get(U key) {
-		if (key == null) return Optional.empty();
-		if (key.index >= contents.size()) return Optional.empty(); // Invalid
-		GenArrayEntry<T, U> entry = contents.get(key.index);
-		if (key.generation != entry.key.generation) return Optional.empty(); // Expired
-		return entry.data;
+	/**
+	 * Returns an Iterable over only the entries which hold items, in no particular order. The same GenArrayEntry is reused for each entry.
+	 * Don't add or remove items while iterating.
+	 */
+	public Iterable<GenArrayEntry<T, U>> live() {
+		return () -> new LiveIterator();
 	}
 
+	/**
+	 * Iterates over every entry, including empty ones, in index order. The same GenArrayEntry is reused for each entry.
+	 * (To skip the empty ones, use live or forEach instead.)
+	 */
 	public Iterator<GenArrayEntry<T, U>> iterator() {
 		return new GenArrayIterator();
 	}
 
 	class GenArrayIterator implements Iterator<GenArrayEntry<T, U>> {
-		
+
 		private int index = 0;
+		private GenArrayEntry<T, U> entry = new GenArrayEntry<>(null, null);
 
 		public boolean hasNext() {
-			return index < size();
+			return index < size;
 		}
 
+		@SuppressWarnings("unchecked")
 		public GenArrayEntry<T, U> next() {
-			return contents.get(index++);
+			entry.key = (U)keys[index];
+			entry.data = (T)data[index];
+			index++;
+			return entry;
 		}
-		
+
 	}
-	
+
+	class LiveIterator implements Iterator<GenArrayEntry<T, U>> {
+
+		private int position = 0;
+		private GenArrayEntry<T, U> entry = new GenArrayEntry<>(null, null);
+
+		public boolean hasNext() {
+			return position < count;
+		}
+
+		@SuppressWarnings("unchecked")
+		public GenArrayEntry<T, U> next() {
+			int index = live[position++];
+			entry.key = (U)keys[index];
+			entry.data = (T)data[index];
+			return entry;
+		}
+
+	}
+
 }
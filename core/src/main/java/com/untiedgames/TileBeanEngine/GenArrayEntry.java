@@ -3,13 +3,14 @@ import java.util.Optional;
 
 /**
  * GenArrayEntry represents an entry in a GenArray (generational array).
+ * When iterating a GenArray, the same GenArrayEntry instance is reused for every entry, so don't hold on to it.
  */
 public class GenArrayEntry<T, U extends GenArrayKey> {
 	
 	U key;
-	Optional<T> data;
+	T data; // Null if the entry is empty
 
-	public GenArrayEntry(U key, Optional<T> data) {
+	public GenArrayEntry(U key, T data) {
 		this.key = key;
 		this.data = data;
 	}
@@ -19,10 +20,17 @@ public class GenArrayEntry<T, U extends GenArrayKey> {
 	}
 
 	public Optional<T> getData() {
+		return Optional.ofNullable(data);
+	}
+
+	/**
+	 * Returns the entry's value, or null if the entry is empty.
+	 */
+	public T getValue() {
 		return data;
 	}
 
 	public boolean hasValue() {
-		return data.isPresent();
+		return data != null;
 	}
 }
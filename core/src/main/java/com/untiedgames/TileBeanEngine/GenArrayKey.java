@@ -2,8 +2,17 @@ package com.untiedgames.TileBeanEngine;
 
 /**
  * GenArrayKey is a handle which can grant access to an entry in a GenArray (generational array).
+ * A key can also be packed into a single long (see pack), which is handy for storing lots of handles in a primitive array.
  */
 public abstract class GenArrayKey {
+
+	/**
+	 * A Factory creates keys of a specific class. Each GenArray is given one, so it can hand out keys without using reflection.
+	 * Usually this is just the key class's constructor, for example: new GenArray<>(Object2DHandle::new)
+	 */
+	public interface Factory<U extends GenArrayKey> {
+		U create(int index, int generation);
+	}
 	
 	protected int index = Integer.MAX_VALUE;
 	protected int generation = Integer.MAX_VALUE;
@@ -16,6 +25,31 @@ public abstract class GenArrayKey {
 		this.generation = generation;
 	}
 
+	/**
+	 * Returns this key packed into a long, with the generation in the upper 32 bits and the index in the lower 32 bits.
+	 */
+	public long pack() {
+		return pack(index, generation);
+	}
+
+	public static long pack(int index, int generation) {
+		return ((long)generation << 32) | (index & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the index of a packed key.
+	 */
+	public static int packedIndex(long packed) {
+		return (int)packed;
+	}
+
+	/**
+	 * Returns the generation of a packed key.
+	 */
+	public static int packedGeneration(long packed) {
+		return (int)(packed >>> 32);
+	}
+
 	public boolean isEmpty() {
 		return index != Integer.MAX_VALUE;
 	}
@@ -10,6 +10,7 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.Matrix4;
 
+@UpdateAccess(parallelInstances = true)
 public class Grid extends Drawable {
 
 	public float cell_width;
@@ -22,6 +23,13 @@ public class Grid extends Drawable {
 	public boolean show_highlights = true;
 	public ArrayList<GridHighlight> highlights;
 
+	// Matrices reused each draw. The local matrix holds the owner's world transform, and is only rebuilt when that changes.
+	private Matrix4 local_matrix = new Matrix4();
+	private Object2D local_matrix_obj;
+	private long local_matrix_version;
+	private Matrix4 original_matrix = new Matrix4();
+	private Matrix4 transform_matrix = new Matrix4();
+
 	/**
 	 * Creates a new grid of the specified width and height in cells, with the specified cell size.
 	 */
@@ -45,12 +53,15 @@ public class Grid extends Drawable {
 		Gdx.gl.glEnable(GL20.GL_BLEND);
         Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
 
-		Matrix4 original_matrix = shaperenderer.getTransformMatrix().cpy();
-		Matrix4 m = new Matrix4();
-		m.scale(obj.scale_x, obj.scale_y, 0);
-		m.translate(obj.x, obj.y, 0);
-		if (obj.rotation != 0.0f) m.rotate(0, 0, 1, obj.rotation * 180.0f / (float)Math.PI);
-		Matrix4 transform_matrix = original_matrix.cpy().mul(m);
+		Matrix4 original_matrix = this.original_matrix.set(shaperenderer.getTransformMatrix());
+		long version = obj.getWorldTransformVersion();
+		if (obj != local_matrix_obj || version != local_matrix_version) {
+			// The owner (or something it's attached to) moved, or this is the first draw, so rebuild the local matrix
+			local_matrix.set(obj.getWorldTransform());
+			local_matrix_obj = obj;
+			local_matrix_version = version;
+		}
+		Matrix4 transform_matrix = this.transform_matrix.set(original_matrix).mul(local_matrix);
 		shaperenderer.setTransformMatrix(transform_matrix);
 		shaperenderer.setColor(obj.r, obj.g, obj.b, obj.a);
 
@@ -84,7 +84,7 @@ public class Input {
 	private boolean first_frame = true;
 
 	public Input() {
-		Gdx.input.setInputProcessor(new InputAdapter(this));
+		if (!TileBeanEngine.isHeadless()) Gdx.input.setInputProcessor(new InputAdapter(this)); // In headless mode there's no keyboard or mouse. Use setKeyPressed instead.
 		for (int i = 0; i < states_keyboard.length; i++) {
 			states_keyboard[i] = new InputState();
 			states_keyboard_prev[i] = new InputState();
@@ -125,6 +125,23 @@ public class Input {
 			else states_keyboard[i].duration = 0;
 		}
 
+		if (!TileBeanEngine.isHeadless()) updateMouse();
+
+		if (first_frame) {
+			first_frame = false;
+			state_mouse_prev.raw_x = state_mouse.raw_x;
+			state_mouse_prev.raw_y = state_mouse.raw_y;
+			state_mouse_prev.world_x = state_mouse.world_x;
+			state_mouse_prev.world_y = state_mouse.world_y;
+			state_mouse_prev.scroll_x = state_mouse.scroll_x;
+			state_mouse_prev.scroll_y = state_mouse.scroll_y;
+			state_mouse_prev.left_button_pressed = state_mouse.left_button_pressed;
+			state_mouse_prev.middle_button_pressed = state_mouse.middle_button_pressed;
+			state_mouse_prev.right_button_pressed = state_mouse.right_button_pressed;
+		}
+	}
+
+	private void updateMouse() {
 		state_mouse.raw_x = Gdx.input.getX();
 		state_mouse.raw_y = Gdx.input.getY();
 
@@ -136,9 +153,9 @@ public class Input {
 		if (opt_obj_camera.isPresent()) {
 			Object2D obj_camera = opt_obj_camera.get();
 			if (obj_camera.z != 0.0f) {
-				Optional<Component> opt_cam = TileBeanEngine.world.tryGetComponent(camera_handle, Camera.class.hashCode());
+				Optional<Camera> opt_cam = TileBeanEngine.world.tryGetComponent(camera_handle, Camera.class);
 				if (opt_cam.isPresent()) {
-					Camera cam = (Camera)opt_cam.get();
+					Camera cam = opt_cam.get();
 					if (window_width < window_height) sc = (window_width / (float)cam.getWidth());
 					else sc = (window_height / (float)cam.getHeight());
 					state_mouse.world_x = ((Gdx.input.getX() - window_width / 2.0f) / obj_camera.z) / sc + obj_camera.x;
@@ -149,19 +166,14 @@ public class Input {
 				}
 			}
 		}
+	}
 
-		if (first_frame) {
-			first_frame = false;
-			state_mouse_prev.raw_x = state_mouse.raw_x;
-			state_mouse_prev.raw_y = state_mouse.raw_y;
-			state_mouse_prev.world_x = state_mouse.world_x;
-			state_mouse_prev.world_y = state_mouse.world_y;
-			state_mouse_prev.scroll_x = state_mouse.scroll_x;
-			state_mouse_prev.scroll_y = state_mouse.scroll_y;
-			state_mouse_prev.left_button_pressed = state_mouse.left_button_pressed;
-			state_mouse_prev.middle_button_pressed = state_mouse.middle_button_pressed;
-			state_mouse_prev.right_button_pressed = state_mouse.right_button_pressed;
-		}
+	/**
+	 * Sets whether a key is pressed, as if it had been pressed or released on the keyboard.
+	 * Use this to drive input in headless mode (see TileBeanEngine.initializeHeadless), where there is no keyboard.
+	 */
+	public void setKeyPressed(int keycode, boolean is_pressed) {
+		if (keycode >= 0 && keycode < states_keyboard.length) states_keyboard[keycode].is_pressed = is_pressed;
 	}
 
 	public void nextFrame() {
@@ -25,6 +25,7 @@ import imgui.type.ImInt;
 public class Main extends ApplicationAdapter {
 
 	ImBoolean show_demo_window = new ImBoolean(false); // Whether or not to show the Dear ImGui demo window
+	ImBoolean show_profiler = new ImBoolean(false); // Whether or not to show the profiler window
 	ImInt current_demo = new ImInt(4);
 	String[] demo_titles = { "Object2D", "Tween & Timer", "Animation", "Input & Sound", "Camera", "Tilemap Basics", "Tilemap Loading (*.tmx)", "Colliders", "Tilemap Collision" };
 	Game[] demos = { new DemoObject2D(), new DemoTweenAndTimer(), new DemoAnimation(), new DemoInput(), new DemoCamera(), new DemoTilemap(), new DemoTilemapLoading(), new DemoColliders(), new DemoTilemapCollision() };
@@ -66,6 +67,13 @@ public class Main extends ApplicationAdapter {
 				ImGui.setTooltip("If checked, the Dear ImGui demo window will be displayed. You can use the demo window to learn how to use Dear ImGui, and see what it's capable of.");
 			}
 
+			if (ImGui.checkbox("Show profiler", show_profiler)) {
+				TileBeanEngine.profiler.setEnabled(show_profiler.get());
+			}
+			if (ImGui.isItemHovered()) {
+				ImGui.setTooltip("If checked, frames are timed and shown in the profiler window. Press F9 to save the recorded frames as a Chrome trace (trace.json).");
+			}
+
 			int last_demo = current_demo.get();
 			if (ImGui.combo("Current Demo", current_demo, demo_titles)) {
 				demos[last_demo].shutdown();
@@ -85,6 +93,16 @@ public class Main extends ApplicationAdapter {
 			if (show_demo_window.get()) {
 				ImGui.showDemoWindow();
 			}
+
+			if (show_profiler.get()) {
+				ImGui.setNextWindowSize(600, 300, ImGuiCond.Once);
+				ImGui.begin("Profiler", show_profiler);
+				ImGui.text("Batch flushes: " + TileBeanEngine.getBatchFlushes() + " (" + TileBeanEngine.getTextureSwitchesSaved() + " saved by grouping textures)");
+				ImGui.text("Culled drawables: " + TileBeanEngine.getCulledCount());
+				TileBeanEngine.profiler.display();
+				ImGui.end();
+				if (!show_profiler.get()) TileBeanEngine.profiler.setEnabled(false); // The window was closed
+			}
 		}
 
 	}
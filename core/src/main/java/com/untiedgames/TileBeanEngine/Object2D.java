@@ -1,9 +1,15 @@
 package com.untiedgames.TileBeanEngine;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Affine2;
 
 /**
  * Object2D is the "entity" of the entity-component system in TileBeanEngine.
  * It represents an object in the game world which has a location (x, y), depth (z), rotation, scale (scale_x, scale_y), and color (r, g, b, a).
  * (In a traditional ECS, the variables of this class might be in other components instead, but I want to make things a little simpler.)
+ *
+ * An object can be attached to a parent object with World.setParent. Its location, rotation, and scale are then relative to the parent,
+ * and getWorldTransform gives the combined transform in world space.
  */
 public class Object2D {
 
@@ -21,8 +27,166 @@ public class Object2D {
 	public float a = 1; // The alpha (transparency) component of the object's color. (Range: 0.0 .. 1.0)
 	public boolean is_visible = true; // Whether or not the object is visible when drawn.
 
+	// The transform as of the last call to getTransformVersion, used to notice changes
+	private float last_x = 0, last_y = 0, last_rotation = 0, last_scale_x = 1, last_scale_y = 1;
+	private long transform_version = 0;
+
+	// Sleep state (see World.sleep)
+	boolean is_sleeping = false;
+	double wake_time = 0; // World sleep clock time at which the object wakes up on its own. Only used while timer_index isn't -1.
+	int sleep_index = -1; // Position in the world's list of sleeping objects
+	int timer_index = -1; // Position in the world's sleep timers, or -1 if sleeping until woken (or not sleeping)
+
+	// Hierarchy (see World.setParent)
+	Object2D parent; // The object this one is attached to, or null
+	ArrayList<Object2D> children; // Objects attached to this one. Null until something is attached.
+
+	// Cached transform in world space, and what it was calculated from
+	private Affine2 world_transform = new Affine2();
+	private long world_version = 0; // Changes whenever world_transform is recalculated
+	private long world_local_version = -1; // Transform version of this object used for world_transform. -1 means it must be recalculated.
+	private long world_parent_version = -1; // World version of the parent used for world_transform
+
 	public Object2DHandle getHandle() {
 		return handle;
 	}
 
+	/**
+	 * Returns a number which changes whenever the object's location (x, y), rotation, or scale changes.
+	 * Anything that caches work based on the transform (transformed vertices, matrices, etc.) can remember the version it was built with,
+	 * and skip rebuilding as long as the version is the same. Objects which never move cost only a few comparisons per call.
+	 * The properties can still be set directly; the change is noticed the next time this is called.
+	 * Note that z isn't part of the transform, since it only affects draw order.
+	 * This and the world transform getters update cached state, so they're synchronized, and safe to call from several threads as long as nothing is moving the object meanwhile.
+	 * (Components which call them from update should declare readsObject2D; see UpdateAccess.)
+	 */
+	public synchronized long getTransformVersion() {
+		if (x != last_x || y != last_y || rotation != last_rotation || scale_x != last_scale_x || scale_y != last_scale_y) {
+			last_x = x;
+			last_y = y;
+			last_rotation = rotation;
+			last_scale_x = scale_x;
+			last_scale_y = scale_y;
+			transform_version++;
+		}
+		return transform_version;
+	}
+
+	/**
+	 * Returns true if the object is sleeping, false otherwise. See World.sleep.
+	 */
+	public boolean isSleeping() {
+		return is_sleeping;
+	}
+
+	/**
+	 * Returns a handle to the object this one is attached to, or an empty handle if it isn't attached to anything.
+	 */
+	public Object2DHandle getParent() {
+		if (parent == null || parent.handle == null) return Object2DHandle.empty();
+		return parent.handle;
+	}
+
+	/**
+	 * Returns the number of objects attached to this one.
+	 */
+	public int getChildCount() {
+		if (children == null) return 0;
+		return children.size();
+	}
+
+	/**
+	 * Returns a handle to the attached object at the given index, in the range 0 .. getChildCount() - 1.
+	 */
+	public Object2DHandle getChild(int index) {
+		return children.get(index).handle;
+	}
+
+	/**
+	 * Returns the object's transform in world space: Its own location, rotation, and scale, combined with those of every object it's attached to.
+	 * For an object without a parent, this is the same as its own transform.
+	 * The result is cached and only recalculated when this object or one of its parents has moved. Don't modify it.
+	 * The world recalculates all world transforms from the top down once per frame (see World.updateTransforms), but this is always up to date.
+	 */
+	public Affine2 getWorldTransform() {
+		refreshWorldTransform(false);
+		return world_transform;
+	}
+
+	/**
+	 * Returns a number which changes whenever the result of getWorldTransform changes.
+	 */
+	public long getWorldTransformVersion() {
+		refreshWorldTransform(false);
+		return world_version;
+	}
+
+	/**
+	 * Returns the X-coordinate of the object in world space.
+	 */
+	public float getWorldX() {
+		return getWorldTransform().m02;
+	}
+
+	/**
+	 * Returns the Y-coordinate of the object in world space.
+	 */
+	public float getWorldY() {
+		return getWorldTransform().m12;
+	}
+
+	/**
+	 * Returns the rotation of the object in world space, in radians.
+	 */
+	public float getWorldRotation() {
+		Affine2 m = getWorldTransform();
+		return (float)Math.atan2(m.m10, m.m00);
+	}
+
+	/**
+	 * Returns the X scale of the object in world space.
+	 */
+	public float getWorldScaleX() {
+		Affine2 m = getWorldTransform();
+		return (float)Math.sqrt(m.m00 * m.m00 + m.m10 * m.m10);
+	}
+
+	/**
+	 * Returns the Y scale of the object in world space.
+	 * (If a parent is rotated and scaled unevenly, the world transform is skewed, and this is only an approximation.)
+	 */
+	public float getWorldScaleY() {
+		Affine2 m = getWorldTransform();
+		float scale_x = getWorldScaleX();
+		if (scale_x == 0.0f) return (float)Math.sqrt(m.m01 * m.m01 + m.m11 * m.m11);
+		return (m.m00 * m.m11 - m.m01 * m.m10) / scale_x;
+	}
+
+	/**
+	 * Recalculates the world transform if this object or its parent has changed.
+	 * If parent_is_fresh is true, the caller has already refreshed the parent, so it isn't checked again.
+	 */
+	synchronized void refreshWorldTransform(boolean parent_is_fresh) {
+		long parent_version = 0;
+		if (parent != null) {
+			if (!parent_is_fresh) parent.refreshWorldTransform(false);
+			parent_version = parent.world_version;
+		}
+		long local_version = getTransformVersion();
+		if (local_version == world_local_version && parent_version == world_parent_version) return; // Nothing has moved
+
+		world_transform.setToTrnRotRadScl(x, y, rotation, scale_x, scale_y);
+		if (parent != null) world_transform.preMul(parent.world_transform);
+		world_local_version = local_version;
+		world_parent_version = parent_version;
+		world_version++;
+	}
+
+	/**
+	 * Forces the world transform to be recalculated the next time it's needed. Used when the parent changes.
+	 */
+	synchronized void invalidateWorldTransform() {
+		world_local_version = -1;
+	}
+
 }
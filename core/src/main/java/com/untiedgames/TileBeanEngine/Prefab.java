@@ -0,0 +1,84 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A Prefab is a template for creating many similar objects: The Object2D properties each object starts with, plus the components it gets.
+ * Pass it to World.instantiate to create any number of objects from it at once, which is much faster than adding each object and component one by one.
+ *
+ * Components can't be shared between objects, so a prefab holds a function which creates each component rather than the component itself.
+ *
+ * Example:
+ *     Prefab enemy = new Prefab();
+ *     enemy.template.z = 5;
+ *     enemy.addComponent(() -> {
+ *         Sprite s = new Sprite();
+ *         s.setGraphics(enemy_texture);
+ *         return s;
+ *     });
+ *     enemy.addComponent(() -> Collider.makeBoxCollider(16, 16));
+ *     Object2DHandle[] wave = TileBeanEngine.world.instantiate(enemy, 1000);
+ */
+public class Prefab {
+
+	public final Object2D template; // Every object created from this prefab starts with a copy of this object's properties.
+	private ArrayList<Supplier<? extends Component>> factories = new ArrayList<>();
+
+	/**
+	 * Creates a prefab whose objects start with default Object2D properties.
+	 */
+	public Prefab() {
+		this(new Object2D());
+	}
+
+	/**
+	 * Creates a prefab whose objects start with the properties of the given object.
+	 * The object itself is used as the template, so later changes to it affect objects instantiated afterward.
+	 */
+	public Prefab(Object2D template) {
+		this.template = template;
+	}
+
+	/**
+	 * Adds a component to the prefab. The given function is called once for every object instantiated, and must return a new component each time.
+	 * Returns this prefab, so calls can be chained.
+	 */
+	public Prefab addComponent(Supplier<? extends Component> factory) {
+		if (factory != null) factories.add(factory);
+		return this;
+	}
+
+	/**
+	 * Returns the number of components each object created from this prefab gets.
+	 */
+	public int getComponentCount() {
+		return factories.size();
+	}
+
+	/**
+	 * Creates the Object2D for a new instance, copying the template's properties.
+	 */
+	Object2D createObject() {
+		Object2D obj = new Object2D();
+		obj.x = template.x;
+		obj.y = template.y;
+		obj.z = template.z;
+		obj.rotation = template.rotation;
+		obj.scale_x = template.scale_x;
+		obj.scale_y = template.scale_y;
+		obj.r = template.r;
+		obj.g = template.g;
+		obj.b = template.b;
+		obj.a = template.a;
+		obj.is_visible = template.is_visible;
+		return obj;
+	}
+
+	/**
+	 * Creates a new instance of the component at the given index, in the range 0 .. getComponentCount() - 1.
+	 */
+	Component createComponent(int index) {
+		return factories.get(index).get();
+	}
+
+}
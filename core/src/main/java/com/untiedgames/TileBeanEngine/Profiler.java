@@ -0,0 +1,293 @@
+package com.untiedgames.TileBeanEngine;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import imgui.ImDrawList;
+import imgui.ImGui;
+import imgui.ImVec2;
+
+/**
+ * Profiler records nested, named timing markers for the last few frames, so you can see where the time in a slow frame went.
+ * The engine marks its own work (input, each logic step, each component type's updates, gathering and sorting drawables, each draw, and so on),
+ * and you can add your own markers around anything else:
+ *
+ *     TileBeanEngine.profiler.begin("Pathfinding");
+ *     findPaths();
+ *     TileBeanEngine.profiler.end();
+ *
+ * Markers can be nested to any depth up to max_depth. Markers are only recorded on the thread which started the frame (the main thread),
+ * so begin and end do nothing when called from component updates running on the UpdateScheduler's threads.
+ *
+ * The profiler is disabled by default, and costs next to nothing while disabled. When enabled, all of its memory is allocated once up front,
+ * so recording allocates nothing. If a frame has more than marker_capacity markers, the rest are dropped (and counted).
+ *
+ * View the recorded frames with display, or save them with exportChromeTrace and open the file in chrome://tracing or https://ui.perfetto.dev.
+ * While enabled, pressing export_key saves a trace to export_path.
+ */
+public class Profiler {
+
+	public static final int max_depth = 32;
+
+	public int export_key = Input.Keys.F9; // The key which exports a Chrome trace. Set to -1 to disable.
+	public String export_path = "trace.json"; // Where export_key saves the trace
+
+	private final int frame_capacity; // The number of frames kept
+	private final int marker_capacity; // The number of markers kept per frame
+
+	private boolean is_enabled = false;
+	private boolean is_paused = false; // If true, no new frames are recorded, so the recorded ones can be looked at
+	private boolean is_in_frame = false;
+	private Thread thread; // The thread which started the current frame
+
+	// Markers, frame_capacity * marker_capacity of each, in order of their begin calls. Allocated when first enabled.
+	private String[] names;
+	private long[] starts; // In nanoseconds, from System.nanoTime
+	private long[] ends;
+	private byte[] depths;
+
+	// Frames, as a ring buffer
+	private int[] marker_counts;
+	private int[] dropped_counts;
+	private long[] frame_starts;
+	private long[] frame_ends;
+	private int frame = -1; // The slot of the current (or last) frame
+	private int frames_recorded = 0; // The number of slots which hold a finished frame, up to frame_capacity
+
+	private int[] stack = new int[max_depth]; // Marker index for each open marker, or -1 if it was dropped
+	private int depth = 0;
+
+	// Display state
+	private int selected = 0; // Frames back from the newest frame
+	private float[] frame_times;
+
+	public Profiler() {
+		this(120, 4096);
+	}
+
+	public Profiler(int frame_capacity, int marker_capacity) {
+		this.frame_capacity = Math.max(1, frame_capacity);
+		this.marker_capacity = Math.max(1, marker_capacity);
+	}
+
+	public boolean isEnabled() {
+		return is_enabled;
+	}
+
+	public void setEnabled(boolean is_enabled) {
+		if (is_enabled && names == null) {
+			int size = frame_capacity * marker_capacity;
+			names = new String[size];
+			starts = new long[size];
+			ends = new long[size];
+			depths = new byte[size];
+			marker_counts = new int[frame_capacity];
+			dropped_counts = new int[frame_capacity];
+			frame_starts = new long[frame_capacity];
+			frame_ends = new long[frame_capacity];
+			frame_times = new float[frame_capacity];
+		}
+		if (!is_enabled) is_in_frame = false;
+		this.is_enabled = is_enabled;
+	}
+
+	/**
+	 * Returns true if recording is paused, false otherwise.
+	 */
+	public boolean isPaused() {
+		return is_paused;
+	}
+
+	/**
+	 * Pauses or resumes recording. While paused, the recorded frames are kept as they are.
+	 */
+	public void setPaused(boolean is_paused) {
+		this.is_paused = is_paused;
+	}
+
+	/**
+	 * Starts recording a frame. Called by the engine.
+	 */
+	void beginFrame() {
+		if (!is_enabled || is_paused) return;
+		if (is_in_frame) endFrame();
+		if (++frame == frame_capacity) frame = 0;
+		marker_counts[frame] = 0;
+		dropped_counts[frame] = 0;
+		frame_starts[frame] = System.nanoTime();
+		frame_ends[frame] = frame_starts[frame];
+		depth = 0;
+		thread = Thread.currentThread();
+		is_in_frame = true;
+	}
+
+	/**
+	 * Finishes recording a frame, ending any markers which are still open. Called by the engine.
+	 */
+	void endFrame() {
+		if (!is_in_frame) return;
+		while (depth > 0) end();
+		frame_ends[frame] = System.nanoTime();
+		if (frames_recorded < frame_capacity) frames_recorded++;
+		is_in_frame = false;
+	}
+
+	/**
+	 * Starts a marker with the given name. Every begin must be matched by an end.
+	 * Use constant strings (or strings you keep around) for names, so no garbage is made each frame.
+	 */
+	public void begin(String name) {
+		if (!is_in_frame || Thread.currentThread() != thread) return;
+		int count = marker_counts[frame];
+		if (depth == max_depth || count == marker_capacity) {
+			if (depth < max_depth) stack[depth] = -1;
+			depth++;
+			dropped_counts[frame]++;
+			return;
+		}
+		int index = frame * marker_capacity + count;
+		names[index] = name;
+		depths[index] = (byte)depth;
+		starts[index] = System.nanoTime();
+		ends[index] = starts[index];
+		marker_counts[frame] = count + 1;
+		stack[depth++] = index;
+	}
+
+	/**
+	 * Ends the marker most recently started with begin.
+	 */
+	public void end() {
+		if (!is_in_frame || depth == 0 || Thread.currentThread() != thread) return;
+		depth--;
+		if (depth >= max_depth) return; // Was dropped
+		int index = stack[depth];
+		if (index >= 0) ends[index] = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of recorded frames available, up to the capacity given to the constructor.
+	 */
+	public int getFrameCount() {
+		return finishedFrames();
+	}
+
+	// Returns the number of finished frames which can be read. While a frame is being recorded, it has taken the slot of the oldest one.
+	private int finishedFrames() {
+		return is_in_frame ? Math.min(frames_recorded, frame_capacity - 1) : frames_recorded;
+	}
+
+	// Returns the slot of the frame the given number of frames back from the newest finished one
+	private int slot(int frames_back) {
+		int newest = is_in_frame ? frame - 1 : frame;
+		return ((newest - frames_back) % frame_capacity + frame_capacity) % frame_capacity;
+	}
+
+	/**
+	 * Writes every recorded frame to a file in the Chrome trace event format.
+	 * Open it in chrome://tracing or https://ui.perfetto.dev. Returns true if successful, false otherwise.
+	 */
+	public boolean exportChromeTrace(String path) {
+		int frame_count = names == null ? 0 : finishedFrames();
+		if (frame_count == 0) {
+			System.err.println("Warning: The profiler has no frames to export. Enable it first.");
+			return false;
+		}
+		long epoch = frame_starts[slot(frame_count - 1)];
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(path))) {
+			out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+			boolean first = true;
+			for (int back = frame_count - 1; back >= 0; back--) {
+				int f = slot(back);
+				first = writeEvent(out, first, "Frame", frame_starts[f] - epoch, frame_ends[f] - frame_starts[f]);
+				int base = f * marker_capacity;
+				for (int i = 0; i < marker_counts[f]; i++) {
+					first = writeEvent(out, first, names[base + i], starts[base + i] - epoch, ends[base + i] - starts[base + i]);
+				}
+			}
+			out.write("]}");
+			return true;
+		} catch (IOException e) {
+			System.err.println("Warning: Couldn't write the profiler trace to " + path + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static boolean writeEvent(BufferedWriter out, boolean first, String name, long start, long duration) throws IOException {
+		if (!first) out.write(',');
+		out.write("{\"name\":\"");
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '"' || c == '\\') out.write('\\');
+			if (c < ' ') out.write(' ');
+			else out.write(c);
+		}
+		// Times are in microseconds. Each frame and marker is a "complete" event (ph X) on a single thread, so nesting comes from the times.
+		out.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":" + (start / 1000.0) + ",\"dur\":" + (duration / 1000.0) + "}");
+		return false;
+	}
+
+	/**
+	 * Displays the profiler using Dear ImGui: A graph of recent frame times to pick a frame from, and a timeline of the picked frame's markers.
+	 * Call this from Game.runGUI, inside a window.
+	 */
+	public void display() {
+		boolean enabled = is_enabled;
+		if (ImGui.checkbox("Record", enabled)) setEnabled(!enabled);
+		ImGui.sameLine();
+		if (ImGui.checkbox("Pause", is_paused)) is_paused = !is_paused;
+		ImGui.sameLine();
+		if (ImGui.button("Export trace")) exportChromeTrace(export_path);
+		int frame_count = names == null ? 0 : finishedFrames();
+		if (frame_count == 0) {
+			ImGui.text("No frames recorded.");
+			return;
+		}
+
+		// Frame times, oldest first
+		float worst = 0;
+		for (int back = frame_count - 1, i = 0; back >= 0; back--, i++) {
+			int f = slot(back);
+			frame_times[i] = (frame_ends[f] - frame_starts[f]) / 1000000f;
+			worst = Math.max(worst, frame_times[i]);
+		}
+		float width = ImGui.getContentRegionAvailX();
+		ImGui.plotHistogram("###profiler_frames", frame_times, frame_count, 0, "ms / frame (worst: " + String.format("%.2f", worst) + ")", 0, Math.max(worst, 1), new ImVec2(width, 60));
+		int[] pick = { frame_count - 1 - Math.min(selected, frame_count - 1) };
+		if (ImGui.sliderInt("Frame", pick, 0, frame_count - 1)) selected = frame_count - 1 - pick[0];
+		selected = Math.min(selected, frame_count - 1);
+
+		int f = slot(selected);
+		long frame_start = frame_starts[f];
+		float frame_duration = Math.max(1, frame_ends[f] - frame_start);
+		ImGui.text(String.format("%.3f ms, %d markers", frame_duration / 1000000f, marker_counts[f]) + (dropped_counts[f] > 0 ? ", " + dropped_counts[f] + " dropped" : ""));
+
+		// Timeline: One row per depth, with each marker as a bar spanning its time in the frame
+		int base = f * marker_capacity;
+		int rows = 1;
+		for (int i = 0; i < marker_counts[f]; i++) rows = Math.max(rows, depths[base + i] + 1);
+		float row_height = 18;
+		ImVec2 origin = ImGui.getCursorScreenPos();
+		ImDrawList draw_list = ImGui.getWindowDrawList();
+		draw_list.pushClipRect(origin.x, origin.y, origin.x + width, origin.y + rows * row_height);
+		int hovered = -1;
+		for (int i = 0; i < marker_counts[f]; i++) {
+			int index = base + i;
+			float x0 = origin.x + width * ((starts[index] - frame_start) / frame_duration);
+			float x1 = origin.x + width * ((ends[index] - frame_start) / frame_duration);
+			if (x1 - x0 < 1) x1 = x0 + 1;
+			float y0 = origin.y + depths[index] * row_height;
+			float y1 = y0 + row_height - 1;
+			float shade = 0.35f + 0.5f * ((names[index].hashCode() & 0xFF) / 255f); // Same name, same color
+			draw_list.addRectFilled(x0, y0, x1, y1, ImGui.getColorU32(0.9f * shade, 0.55f, 1.0f - 0.6f * shade, 1));
+			if (x1 - x0 > 40) draw_list.addText(x0 + 2, y0 + 2, ImGui.getColorU32(0, 0, 0, 1), names[index]);
+			if (ImGui.isMouseHoveringRect(x0, y0, x1, y1)) hovered = index;
+		}
+		draw_list.popClipRect();
+		ImGui.dummy(width, rows * row_height);
+		if (hovered != -1) {
+			ImGui.setTooltip(names[hovered] + String.format(": %.3f ms", (ends[hovered] - starts[hovered]) / 1000000f));
+		}
+	}
+
+}
@@ -0,0 +1,239 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * RenderList keeps every Drawable in a World sorted by the z of its owner, so drawing doesn't need to gather and sort them from scratch each frame.
+ * Drawables at the same z are grouped by texture (see Drawable.getTextureKey), so the SpriteBatch switches textures, and flushes, as rarely as possible.
+ * The World tells it when drawables are added or removed, and update (called once per frame, before drawing) brings the order up to date.
+ *
+ * Each drawable caches its owner Object2D, along with the owner's z and visibility as of the last update, so sorting and drawing never look anything up in the World.
+ * Since Object2D.z is a plain field, update reads every owner's z to find out whether any have changed, but it only sorts when something actually moved:
+ * - A few drawables out of place (such as a handful of objects changing z, or a few added) are fixed with an insertion sort, which costs about O(n).
+ * - Many out of place (such as a whole level being added) are fixed with a full stable sort.
+ * Drawables with equal z and texture keep the order they were added in.
+ *
+ * Each drawable's sort key is a long: The z (as sortable bits) in the upper 32 bits, and the texture key in the lower 32.
+ * Comparing keys therefore orders by z first, then by texture, with a single comparison.
+ */
+class RenderList {
+
+	private static final int insertion_sort_limit = 32; // Most out-of-order drawables worth fixing with an insertion sort
+	private static final Comparator<Drawable> by_key = (a, b) -> Long.compare(a.render_key, b.render_key);
+
+	private World world;
+	private Drawable[] items = new Drawable[64]; // Sorted from 0 to sorted_size - 1, then drawables added since the last update. Removed ones are null until the next update.
+	private int size = 0;
+	private int sorted_size = 0;
+	private int removed_count = 0;
+	private int next_sequence = 0;
+
+	// Texture switch counts from the last countTextureSwitches
+	private int texture_switches = 0;
+	private int ungrouped_texture_switches = 0;
+	private long[] scratch = new long[0];
+
+	RenderList(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Returns the number of drawables in the list. Only meaningful right after update.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the drawable at the given position, in order of z, from 0 to size() - 1. Only meaningful right after update.
+	 */
+	Drawable get(int index) {
+		return items[index];
+	}
+
+	/**
+	 * Adds a drawable. It's put in place at the next update.
+	 */
+	void add(Drawable d) {
+		if (d.render_index != -1) return;
+		if (removed_count > size / 2) compact(); // Drawables come and go without update being called (such as when headless), so don't let the gaps pile up
+		if (size == items.length) items = Arrays.copyOf(items, size * 2);
+		d.render_index = size;
+		d.render_sequence = next_sequence++;
+		items[size++] = d;
+	}
+
+	/**
+	 * Removes a drawable. Its slot is cleaned up at the next update.
+	 */
+	void remove(Drawable d) {
+		int index = d.render_index;
+		if (index < 0 || index >= size || items[index] != d) return;
+		items[index] = null;
+		d.render_index = -1;
+		d.render_object = null;
+		removed_count++;
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			Drawable d = items[i];
+			if (d == null) continue;
+			d.render_index = -1;
+			d.render_object = null;
+		}
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+		sorted_size = 0;
+		removed_count = 0;
+		next_sequence = 0;
+	}
+
+	/**
+	 * Brings the list up to date: Drops removed drawables, refreshes each drawable's cached z and visibility, and restores the order by z.
+	 */
+	void update() {
+		boolean is_moved = false; // Whether any drawable changed position, so render indexes need updating
+
+		if (removed_count > 0) compact();
+
+		// Find the owners of newly added drawables
+		for (int i = sorted_size; i < size; i++) {
+			items[i].render_object = world.get(items[i].getOwner());
+		}
+		sorted_size = size;
+
+		// Refresh the cached z, texture, and visibility, counting places where the sort key goes down instead of up
+		int out_of_order = 0;
+		long prev_key = Long.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			Drawable d = items[i];
+			Object2D obj = d.render_object;
+			if (obj != null) {
+				d.render_z = obj.z;
+				d.render_visible = obj.is_visible;
+			} else {
+				d.render_visible = false;
+			}
+			d.render_texture = d.getTextureKey();
+			d.render_key = sortKey(d.render_z, d.render_texture);
+			if (d.render_key < prev_key) out_of_order++;
+			prev_key = d.render_key;
+		}
+
+		if (out_of_order > 0) {
+			if (out_of_order <= insertion_sort_limit) insertionSort();
+			else Arrays.sort(items, 0, size, by_key); // Stable, and still fast when the list is mostly in order
+			is_moved = true;
+		}
+
+		if (is_moved) {
+			for (int i = 0; i < size; i++) {
+				items[i].render_index = i;
+			}
+		}
+	}
+
+	/**
+	 * Closes the gaps left by removed drawables. The sorted part stays sorted.
+	 */
+	private void compact() {
+		int j = 0;
+		int new_sorted_size = 0;
+		for (int i = 0; i < size; i++) {
+			Drawable d = items[i];
+			if (d == null) continue;
+			if (i < sorted_size) new_sorted_size++;
+			d.render_index = j;
+			items[j++] = d;
+		}
+		Arrays.fill(items, j, size, null);
+		size = j;
+		sorted_size = new_sorted_size;
+		removed_count = 0;
+	}
+
+	/**
+	 * Returns the sort key for the given z and texture key.
+	 */
+	static long sortKey(float z, int texture_key) {
+		int bits = Float.floatToIntBits(z);
+		bits ^= (bits >> 31) & 0x7FFFFFFF; // Flip negative floats so the bits compare as ints in the same order as the floats
+		return ((long)bits << 32) | (texture_key & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Counts how many times the texture changes between one visible drawable and the next, in the current order,
+	 * and how many times it would change if drawables at the same z were simply drawn in the order they were added.
+	 * Read the results with getTextureSwitches and getUngroupedTextureSwitches. Call this after update.
+	 * (This sorts each z that has several textures, so the engine only calls it while the profiler is enabled.)
+	 */
+	void countTextureSwitches() {
+		texture_switches = 0;
+		ungrouped_texture_switches = 0;
+		int prev_texture = 0;
+		int ungrouped_prev_texture = 0;
+		boolean has_prev = false; // Whether a visible drawable came before, in the current order
+		boolean has_ungrouped_prev = false; // Likewise, in the order they were added
+		int start = 0;
+		while (start < size) {
+			// Find the run of drawables at the same z
+			long z_bits = items[start].render_key >>> 32;
+			int end = start + 1;
+			while (end < size && (items[end].render_key >>> 32) == z_bits) end++;
+
+			// Count switches in the current order, and pack the run's visible drawables as (sequence, texture) to restore the order they were added in
+			if (scratch.length < end - start) scratch = new long[Math.max(end - start, scratch.length * 2)];
+			int count = 0;
+			boolean has_several = false;
+			for (int i = start; i < end; i++) {
+				Drawable d = items[i];
+				if (!d.render_visible) continue;
+				if (count > 0 && d.render_texture != prev_texture) has_several = true;
+				if (has_prev && d.render_texture != prev_texture) texture_switches++;
+				prev_texture = d.render_texture;
+				has_prev = true;
+				scratch[count++] = ((long)d.render_sequence << 32) | (d.render_texture & 0xFFFFFFFFL);
+			}
+			if (has_several) Arrays.sort(scratch, 0, count); // A run with a single texture is the same in either order
+
+			// Count switches in the order they were added
+			for (int i = 0; i < count; i++) {
+				int texture = (int)scratch[i];
+				if (has_ungrouped_prev && texture != ungrouped_prev_texture) ungrouped_texture_switches++;
+				ungrouped_prev_texture = texture;
+				has_ungrouped_prev = true;
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Returns the number of texture switches between visible drawables, as of the last countTextureSwitches.
+	 */
+	int getTextureSwitches() {
+		return texture_switches;
+	}
+
+	/**
+	 * Returns the number of texture switches there would have been without grouping by texture, as of the last countTextureSwitches.
+	 */
+	int getUngroupedTextureSwitches() {
+		return ungrouped_texture_switches;
+	}
+
+	private void insertionSort() {
+		for (int i = 1; i < size; i++) {
+			Drawable d = items[i];
+			long key = d.render_key;
+			int j = i - 1;
+			if (items[j].render_key <= key) continue; // Already in place, which is the case for almost every drawable
+			while (j >= 0 && items[j].render_key > key) {
+				items[j + 1] = items[j];
+				j--;
+			}
+			items[j + 1] = d;
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.Arrays;
+
+/**
+ * SleepTimers holds the objects in a World which were put to sleep for a while (see World.sleep), ordered by when they wake up.
+ * It's a binary min-heap keyed by Object2D.wake_time, so finding the objects due to wake costs O(log n) each, and objects which aren't due cost nothing.
+ * Each object keeps its position in the heap in Object2D.timer_index (-1 when it isn't in the heap), so it can also be removed early in O(log n).
+ */
+class SleepTimers {
+
+	private Object2D[] heap = new Object2D[16];
+	private int size = 0;
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the object which wakes up first, or null if there are none.
+	 */
+	Object2D peek() {
+		return size == 0 ? null : heap[0];
+	}
+
+	/**
+	 * Adds an object, which must not already be in the heap. Set its wake_time first.
+	 */
+	void add(Object2D obj) {
+		if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+		heap[size] = obj;
+		obj.timer_index = size;
+		size++;
+		siftUp(obj.timer_index);
+	}
+
+	/**
+	 * Removes an object, if it's in the heap.
+	 */
+	void remove(Object2D obj) {
+		int index = obj.timer_index;
+		if (index == -1) return;
+		obj.timer_index = -1;
+		Object2D last = heap[--size];
+		heap[size] = null;
+		if (last == obj) return;
+		heap[index] = last;
+		last.timer_index = index;
+		siftDown(index);
+		siftUp(last.timer_index);
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			heap[i].timer_index = -1;
+		}
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+	}
+
+	private void siftUp(int index) {
+		Object2D obj = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (heap[parent].wake_time <= obj.wake_time) break;
+			move(parent, index);
+			index = parent;
+		}
+		heap[index] = obj;
+		obj.timer_index = index;
+	}
+
+	private void siftDown(int index) {
+		Object2D obj = heap[index];
+		while (true) {
+			int child = index * 2 + 1;
+			if (child >= size) break;
+			if (child + 1 < size && heap[child + 1].wake_time < heap[child].wake_time) child++;
+			if (obj.wake_time <= heap[child].wake_time) break;
+			move(child, index);
+			index = child;
+		}
+		heap[index] = obj;
+		obj.timer_index = index;
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		heap[to].timer_index = to;
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.untiedgames.TileBeanEngine;
+import java.nio.ByteBuffer;
+
+/**
+ * Snapshottable is implemented by components which can be saved in a world snapshot (see World.snapshot and World.restore).
+ * Components which don't implement it are left out of snapshots, so objects won't have them after a restore.
+ *
+ * To restore a component, the World creates it with its no-argument constructor (which may be private) and then calls readSnapshot.
+ * Component.initialize is NOT called, so readSnapshot should put the component back exactly as it was.
+ * readSnapshot must read exactly what writeSnapshot wrote, in the same order.
+ *
+ * Example:
+ *     public void writeSnapshot(ByteBuffer buffer) {
+ *         buffer.putFloat(speed);
+ *         buffer.putInt(health);
+ *     }
+ *
+ *     public void readSnapshot(ByteBuffer buffer) {
+ *         speed = buffer.getFloat();
+ *         health = buffer.getInt();
+ *     }
+ */
+public interface Snapshottable {
+
+	/**
+	 * Writes the component's state to the buffer.
+	 */
+	void writeSnapshot(ByteBuffer buffer);
+
+	/**
+	 * Reads the component's state from the buffer, as written by writeSnapshot.
+	 */
+	void readSnapshot(ByteBuffer buffer);
+
+}
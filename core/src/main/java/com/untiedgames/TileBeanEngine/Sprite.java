@@ -1,8 +1,10 @@
 package com.untiedgames.TileBeanEngine;
+import java.nio.ByteBuffer;
 import java.util.Optional;
 
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Rectangle;
 import com.untiedgames.TileBeanEngine.AssetSystem.TextureAsset;
 import com.untiedgames.TileBeanEngine.AssetSystem.TextureAssetHandle;
 
@@ -10,13 +12,22 @@ import com.untiedgames.TileBeanEngine.AssetSystem.TextureAssetHandle;
  * Sprite is the main way to display things in TileBeanEngine.
  * It provides both update and draw methods, which can be overridden in derived classes.
  */
-public class Sprite extends Drawable {
+@UpdateAccess(readsAssets = true, parallelInstances = true)
+public class Sprite extends Drawable implements Snapshottable {
 
 	private TextureAssetHandle texture_handle = TextureAssetHandle.empty();
 	private boolean is_playing = false;
 	private float current_frame = 0;
 	private float play_speed = 1;
 
+	// The current frame's region and texture key, looked up once and kept until the graphics, the frame, or the asset's version changes (see getRegion)
+	private TextureAssetHandle region_handle = null;
+	private int region_frame = -1;
+	private TextureAsset region_asset = null;
+	private int region_asset_version = 0;
+	private TextureRegion current_region = null;
+	private int texture_key = 0;
+
 	public boolean is_looping = true;
 
 	////////////////////////
@@ -149,29 +160,123 @@ public class Sprite extends Drawable {
 		drawInternal(spritebatch);
 	}
 
+	public int getTextureKey() {
+		getRegion();
+		return texture_key;
+	}
+
+	/**
+	 * Returns the area the sprite's current frame covers, centered on the owner. Sprites whose bounds are outside the camera's view aren't drawn.
+	 * If a derived class draws anything outside of that area (in a custom draw method), it must override this to cover it, or return false to always be drawn.
+	 */
+	public boolean getBounds(Rectangle bounds) {
+		TextureRegion region = getRegion();
+		if (region == null) return false;
+		float half_w = region.getRegionWidth() * .5f;
+		float half_h = region.getRegionHeight() * .5f;
+		TransformStore t = TileBeanEngine.world.transforms();
+		Object2DHandle handle = getOwner();
+		if (t.isCurrent(handle)) {
+			// The engine culls right after updating the transform store, so read the world transform from there
+			// The box around the texture's rectangle, transformed: Each axis of the rectangle adds its projection onto X and Y
+			int i = handle.index;
+			float extent_x = Math.abs(t.m00[i]) * half_w + Math.abs(t.m01[i]) * half_h;
+			float extent_y = Math.abs(t.m10[i]) * half_w + Math.abs(t.m11[i]) * half_h;
+			bounds.set(t.m02[i] - extent_x, t.m12[i] - extent_y, extent_x * 2, extent_y * 2);
+			return true;
+		}
+		Object2D obj = getOwnerObject();
+		if (obj == null) return false;
+		float x = obj.x, y = obj.y, rotation = obj.rotation, scale_x = obj.scale_x, scale_y = obj.scale_y;
+		if (obj.parent != null) {
+			x = obj.getWorldX();
+			y = obj.getWorldY();
+			rotation = obj.getWorldRotation();
+			scale_x = obj.getWorldScaleX();
+			scale_y = obj.getWorldScaleY();
+		}
+		// The sprite is drawn centered on the object, so its box is the scaled texture, rotated about the center
+		half_w *= Math.abs(scale_x);
+		half_h *= Math.abs(scale_y);
+		if (rotation != 0.0f) {
+			float cos = Math.abs((float)Math.cos(rotation));
+			float sin = Math.abs((float)Math.sin(rotation));
+			float rotated_w = cos * half_w + sin * half_h;
+			half_h = sin * half_w + cos * half_h;
+			half_w = rotated_w;
+		}
+		bounds.set(x - half_w, y - half_h, half_w * 2, half_h * 2);
+		return true;
+	}
+
 	/**
 	 * Draws the sprite's graphics.
 	 * In a custom draw method, you can call this method to draw the sprite's graphics at any time.
 	 */
 	protected final void drawInternal(SpriteBatch spritebatch) {
-		Optional<TextureAsset> opt_texture_asset = TileBeanEngine.assets.tryGet(texture_handle);
-		if (opt_texture_asset.isPresent()) {
-			TextureAsset texture_asset = opt_texture_asset.get();
-			Optional<Texture> opt_texture = texture_asset.getTexture((int)current_frame);
-			if (opt_texture.isPresent()) {
-				Texture texture = opt_texture.get();
-				Optional<Object2D> opt_obj = TileBeanEngine.world.tryGet(getOwner());
-				if (opt_obj.isPresent()) {
-					Object2D obj = opt_obj.get();
-					int w = texture.getWidth();
-					int h = texture.getHeight();
-					float w_half = (float)w * .5f;
-					float h_half = (float)h * .5f;
-					spritebatch.setColor(obj.r, obj.g, obj.b, obj.a);
-					spritebatch.draw(texture, obj.x - w_half, obj.y - h_half, w_half, h_half, w, h, obj.scale_x, -obj.scale_y, obj.rotation * 180f / (float)Math.PI, 0, 0, w, h, false, false);
-				}
+		TextureRegion region = getRegion();
+		if (region == null) return;
+		Object2D obj = getOwnerObject();
+		if (obj == null) return;
+		int w = region.getRegionWidth();
+		int h = region.getRegionHeight();
+		float w_half = (float)w * .5f;
+		float h_half = (float)h * .5f;
+		float x = obj.x, y = obj.y, rotation = obj.rotation, scale_x = obj.scale_x, scale_y = obj.scale_y;
+		if (obj.parent != null) {
+			// Attached to another object, so draw in world space
+			x = obj.getWorldX();
+			y = obj.getWorldY();
+			rotation = obj.getWorldRotation();
+			scale_x = obj.getWorldScaleX();
+			scale_y = obj.getWorldScaleY();
+		}
+		spritebatch.setColor(obj.r, obj.g, obj.b, obj.a);
+		spritebatch.draw(region, x - w_half, y - h_half, w_half, h_half, w, h, scale_x, -scale_y, rotation * 180f / (float)Math.PI);
+	}
+
+	/**
+	 * Returns the region of the current frame, or null if there isn't one.
+	 * The engine asks for the texture key and the bounds, and draws, every frame, so the lookup is kept until the graphics, the frame, or the asset changes.
+	 */
+	private TextureRegion getRegion() {
+		int frame = (int)current_frame;
+		if (texture_handle != region_handle || frame != region_frame || (region_asset != null && region_asset.getVersion() != region_asset_version)) {
+			region_handle = texture_handle;
+			region_frame = frame;
+			region_asset = TileBeanEngine.assets.get(texture_handle);
+			current_region = null;
+			if (region_asset != null) {
+				region_asset_version = region_asset.getVersion();
+				Optional<TextureRegion> opt_region = region_asset.getTexture(frame);
+				if (opt_region.isPresent()) current_region = opt_region.get();
 			}
+			texture_key = current_region != null ? current_region.getTexture().getTextureObjectHandle() : 0;
 		}
+		return current_region;
+	}
+
+	// The owner, as found by the render list if this sprite is in one, so drawing doesn't look it up in the World again
+	private Object2D getOwnerObject() {
+		if (render_object != null) return render_object;
+		return TileBeanEngine.world.get(getOwner());
+	}
+
+	public void writeSnapshot(ByteBuffer buffer) {
+		buffer.putInt(texture_handle.index);
+		buffer.putInt(texture_handle.generation);
+		buffer.put((byte)(is_playing ? 1 : 0));
+		buffer.putFloat(current_frame);
+		buffer.putFloat(play_speed);
+		buffer.put((byte)(is_looping ? 1 : 0));
+	}
+
+	public void readSnapshot(ByteBuffer buffer) {
+		texture_handle = new TextureAssetHandle(buffer.getInt(), buffer.getInt());
+		is_playing = buffer.get() != 0;
+		current_frame = buffer.getFloat();
+		play_speed = buffer.getFloat();
+		is_looping = buffer.get() != 0;
 	}
 
 }
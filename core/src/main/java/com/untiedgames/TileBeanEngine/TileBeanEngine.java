@@ -8,6 +8,7 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.untiedgames.TileBeanEngine.AssetSystem.AssetManager;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Graphics;
@@ -18,9 +19,6 @@ import imgui.flag.ImGuiConfigFlags;
 import imgui.gl3.ImGuiImplGl3;
 import imgui.glfw.ImGuiImplGlfw;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Optional;
 
 import org.lwjgl.glfw.Callbacks;
@@ -34,6 +32,7 @@ public class TileBeanEngine {
 	public static AssetManager assets; // Contains all graphics and other assets for the game.
 	public static World world; // Contains all game objects and their components.
 	public static Input input; // Handles input to the game.
+	public static Profiler profiler = new Profiler(); // Records where the time in each frame goes. Disabled by default.
 
 	public static Color bg_color = new Color(0.15f, 0.15f, 0.2f, 1f); // The background color of the game world.
 	public static Color letterbox_color = new Color(0, 0, 0, 1f); // The color of the letterbox (bars on either side of the window).
@@ -46,6 +45,9 @@ public class TileBeanEngine {
 	private static int render_fps = 60; // The target frames per second for displaying the game. The default will be set to your monitor's refresh rate plus one.
 
 	public static boolean show_colliders = false;
+	public static boolean parallel_updates = false; // If true, components are updated on several threads according to their UpdateAccess annotations. See UpdateScheduler.
+	private static UpdateScheduler scheduler; // Created the first time parallel_updates is used
+	private static boolean is_headless = false; // If true, the engine was started with initializeHeadless: There is no window, no rendering, and no GUI.
 
 	// Rendering variables
 
@@ -58,6 +60,11 @@ public class TileBeanEngine {
 	static final int default_render_target_width = 1920;
 	static final int default_render_target_height = 1080;
 	private static FrameBuffer render_target;
+	private static int batch_flushes = 0; // SpriteBatch render calls while drawing the world, last frame
+	private static int texture_switches_saved = 0; // Texture switches avoided by grouping drawables by texture, last frame (counted while profiling)
+	private static int culled_count = 0; // Drawables skipped last frame because they were outside the camera's view
+	private static final Rectangle view_bounds = new Rectangle();
+	private static final Rectangle drawable_bounds = new Rectangle();
 
 	// FPS counter
 	
@@ -79,6 +86,7 @@ public class TileBeanEngine {
 	public static void initialize() {
 		// Engine setup
 
+		is_headless = false; // In case initializeHeadless was called before, such as by tests
 		assets = new AssetManager();
 		world = new World();
 		input = new Input();
@@ -108,11 +116,50 @@ public class TileBeanEngine {
 		imgui_gl3.init("#version 150");
 	}
 
+	/**
+	 * Starts the engine in headless mode, without a window, GL context, or Dear ImGui. Use this to run game logic on a server, in CI, or in a soak test.
+	 * Nothing is drawn and Game.runGUI is never called, so don't load textures or other assets which need a GL context.
+	 *
+	 * There's no libGDX render loop to call run, so drive the engine yourself with one of:
+	 * - step(): Performs exactly one logic step of logic_fps seconds. This is the fastest way to simulate many ticks.
+	 * - tick(delta): Advances by the given time in seconds, performing as many logic steps as run would. Pass it wall-clock time for real-time servers.
+	 *
+	 * Example:
+	 *     TileBeanEngine.initializeHeadless();
+	 *     TileBeanEngine.game = new MyServerGame();
+	 *     TileBeanEngine.game.initialize();
+	 *     for (int i = 0; i < 100000; i++) TileBeanEngine.step();
+	 *     TileBeanEngine.shutdown();
+	 */
+	public static void initializeHeadless() {
+		is_headless = true;
+		assets = new AssetManager();
+		world = new World();
+		input = new Input();
+
+		setupCamera();
+		setResolution(default_render_target_width, default_render_target_height);
+		for (int i = 0; i < tick_count; i++) ticks[i] = 60;
+		tick_sum = tick_count * 60;
+	}
+
+	/**
+	 * Returns true if the engine was started with initializeHeadless, false otherwise.
+	 */
+	public static boolean isHeadless() {
+		return is_headless;
+	}
+
 	/**
 	 * Shuts down the engine.
 	 */
 	public static void shutdown() {
 		assets.clear();
+		if (scheduler != null) {
+			scheduler.dispose();
+			scheduler = null; // So a later initialize (such as the next test run) gets a working pool
+		}
+		if (is_headless) return;
 		spritebatch.dispose();
 		shaperenderer.dispose();
 		imgui_gl3.shutdown();
@@ -134,19 +181,21 @@ public class TileBeanEngine {
 		render_target_width = width;
 		render_target_height = height;
 		
-		if (render_target != null) render_target.dispose();
-		render_target = new FrameBuffer(Format.RGB888, render_target_width, render_target_height, false);
-
-		if (internal_camera == null) internal_camera = new OrthographicCamera(render_target_width, render_target_height);
-		else {
-			internal_camera.viewportWidth = render_target_width;
-			internal_camera.viewportHeight = render_target_height;
-			internal_camera.update();
+		if (!is_headless) {
+			if (render_target != null) render_target.dispose();
+			render_target = new FrameBuffer(Format.RGB888, render_target_width, render_target_height, false);
+
+			if (internal_camera == null) internal_camera = new OrthographicCamera(render_target_width, render_target_height);
+			else {
+				internal_camera.viewportWidth = render_target_width;
+				internal_camera.viewportHeight = render_target_height;
+				internal_camera.update();
+			}
 		}
 
-		Optional<Component> opt_cam = world.tryGetComponent(camera_handle, Camera.class.hashCode());
+		Optional<Camera> opt_cam = world.tryGetComponent(camera_handle, Camera.class);
 		if (opt_cam.isPresent()) {
-			((Camera)opt_cam.get()).setSize(render_target_width, render_target_height);
+			opt_cam.get().setSize(render_target_width, render_target_height);
 		}
 	}
 
@@ -166,19 +215,25 @@ public class TileBeanEngine {
 		return default_render_target_height;
 	}
 
+	// In headless mode there is no window, so these act as if the window exactly fit the render target.
+
 	public static float getWindowX() {
+		if (is_headless) return 0;
 		return ImGui.getMainViewport().getPosX();
 	}
 
 	public static float getWindowY() {
+		if (is_headless) return 0;
 		return ImGui.getMainViewport().getPosY();
 	}
 
 	public static float getWindowWidth() {
+		if (is_headless) return render_target_width;
 		return ImGui.getIO().getDisplaySizeX();
 	}
 
 	public static float getWindowHeight() {
+		if (is_headless) return render_target_height;
 		return ImGui.getIO().getDisplaySizeY();
 	}
 
@@ -194,7 +249,7 @@ public class TileBeanEngine {
 	 */
 	public static void setRenderFPS(int render_fps) {
 		TileBeanEngine.render_fps = render_fps;
-		Gdx.graphics.setForegroundFPS(render_fps);
+		if (!is_headless) Gdx.graphics.setForegroundFPS(render_fps);
 	}
 
 	/**
@@ -218,6 +273,28 @@ public class TileBeanEngine {
 		ImGui.plotLines("###fps_graph", ticks, tick_count, tick_index, "\n\n\nms / frame: " + String.format("%.2f", average), 0, 60.0f, new ImVec2(ImGui.getWindowSize().x, 60.0f));
 	}
 
+	/**
+	 * Returns the number of times the SpriteBatch flushed (sent a batch to the GPU) while drawing the world last frame.
+	 */
+	public static int getBatchFlushes() {
+		return batch_flushes;
+	}
+
+	/**
+	 * Returns the number of texture switches, and so SpriteBatch flushes, saved last frame by drawing drawables at the same z grouped by texture.
+	 * This is only counted while the profiler is enabled.
+	 */
+	public static int getTextureSwitchesSaved() {
+		return texture_switches_saved;
+	}
+
+	/**
+	 * Returns the number of drawables which weren't drawn last frame because their bounds were outside the camera's view. (See Drawable.getBounds)
+	 */
+	public static int getCulledCount() {
+		return culled_count;
+	}
+
 	/**
 	 * Retrieves the libGDX SpriteBatch, which can be used for custom drawing.
 	 */
@@ -253,7 +330,7 @@ public class TileBeanEngine {
 	 */
 	public static void setCamera(Object2DHandle handle) {
 		camera_handle = handle;
-		Optional<Component> opt_cam = world.tryGetComponent(camera_handle, Camera.class.hashCode());
+		Optional<Camera> opt_cam = world.tryGetComponent(camera_handle, Camera.class);
 		if (!opt_cam.isPresent()) {
 			System.err.println("Warning: No camera component is present on handle passed to setCamera.");
 		}
@@ -267,26 +344,42 @@ public class TileBeanEngine {
 	}
 
 	/**
-	 * Performs game logic and drawing, and runs the GUI (if any).
+	 * Performs exactly one logic step of logic_fps seconds, ignoring speed_multiplier. Only for headless mode (see initializeHeadless).
 	 */
-	public static void run() {
-		// Reset the libGDX input processor if ImGui had requested input
-		
-		if (temp_input_processor != null) {
-			Gdx.input.setInputProcessor(temp_input_processor);
-			temp_input_processor = null;
+	public static void step() {
+		if (!is_headless) {
+			System.err.println("Warning: step was called, but the engine isn't headless. Use run instead.");
+			return;
 		}
+		profiler.beginFrame();
+		logicStep((float)logic_fps);
+		profiler.begin("Transforms");
+		world.updateTransforms();
+		profiler.end();
+		countFrame((float)logic_fps);
+		input.nextFrame();
+		profiler.endFrame();
+	}
 
-		// Start a new ImGui frame
-		
-		imgui_gl3.newFrame();
-		imgui_glfw.newFrame();
-		ImGui.newFrame();
-		ImGuiIO io = ImGui.getIO();
+	/**
+	 * Advances the game by the given time in seconds, performing as many logic steps as needed, the same way run does. Only for headless mode (see initializeHeadless).
+	 */
+	public static void tick(float delta) {
+		if (!is_headless) {
+			System.err.println("Warning: tick was called, but the engine isn't headless. Use run instead.");
+			return;
+		}
+		profiler.beginFrame();
+		runLogic(delta);
+		countFrame(delta);
+		input.nextFrame();
+		profiler.endFrame();
+	}
 
-		// Game loop (logic)
-		
-		float total_delta = Gdx.graphics.getDeltaTime();
+	/**
+	 * Performs as many logic steps as fit in the time that has passed, then updates world transforms.
+	 */
+	private static void runLogic(float total_delta) {
 		delta_accumulator += total_delta;
 		delta_accumulator *= speed_multiplier;
 
@@ -294,72 +387,151 @@ public class TileBeanEngine {
 
 		while (delta_accumulator > 0.0) {
 			double delta = Math.min(delta_accumulator, logic_fps);
-			
-			time += (float)delta;
+			logicStep((float)delta);
+			delta_accumulator -= delta;
+			if (delta_accumulator < 0.001) delta_accumulator = 0;
+		}
 
-			input.update((float)delta);
-			game.update((float)delta);
+		profiler.begin("Transforms");
+		world.updateTransforms(); // Propagate transforms down the object hierarchy once, before anything is drawn
+		profiler.end();
+	}
 
-			for (ArrayList<Component> list : world.components.values()) {
-				for (Component c : list) {
-					c.update((float)delta);
+	/**
+	 * Performs one logic step: Input, game logic, and component updates, followed by structural changes.
+	 */
+	private static void logicStep(float delta) {
+		profiler.begin("Logic step");
+		time += delta;
+
+		profiler.begin("Input");
+		input.update(delta);
+		profiler.end();
+		profiler.begin("Game update");
+		game.update(delta);
+		world.updateSleepTimers(delta);
+		profiler.end();
+
+		profiler.begin("Components");
+		if (parallel_updates) {
+			if (scheduler == null) scheduler = new UpdateScheduler();
+			scheduler.update(world, delta);
+		} else {
+			boolean is_profiling = profiler.isEnabled(); // Looking up each type's name isn't free, so only do it when it's needed
+			for (int id = 0; id < world.components.length; id++) {
+				ComponentStore store = world.components[id];
+				if (store == null || store.activeCount() == 0) continue;
+				if (is_profiling) profiler.begin(ComponentType.get(id).getName());
+				for (int i = 0; i < store.activeCount(); i++) { // Only the active range; disabled and sleeping components are skipped
+					store.get(i).update(delta);
 				}
+				if (is_profiling) profiler.end();
 			}
-
-			delta_accumulator -= delta;
-			if (delta_accumulator < 0.001) delta_accumulator = 0;
 		}
+		profiler.end();
+		profiler.begin("Commands");
+		world.commands().flush(); // Apply structural changes recorded during the update
+		profiler.end();
+		profiler.end();
+	}
 
-		// FPS counter
-		
+	// FPS counter
+	private static void countFrame(float total_delta) {
 		if (total_delta != 0.0f) {
-			float tick = 1.0f / (float)total_delta;
+			float tick = 1.0f / total_delta;
 			tick_sum -= ticks[tick_index];
 			tick_sum += tick;
 			ticks[tick_index] = tick;
 			if (++tick_index == tick_count) tick_index = 0;
 		}
+	}
+
+	/**
+	 * Performs game logic and drawing, and runs the GUI (if any).
+	 */
+	public static void run() {
+		profiler.beginFrame();
+
+		// Reset the libGDX input processor if ImGui had requested input
+		
+		if (temp_input_processor != null) {
+			Gdx.input.setInputProcessor(temp_input_processor);
+			temp_input_processor = null;
+		}
+
+		// Start a new ImGui frame
+		
+		profiler.begin("ImGui new frame");
+		imgui_gl3.newFrame();
+		imgui_glfw.newFrame();
+		ImGui.newFrame();
+		ImGuiIO io = ImGui.getIO();
+		profiler.end();
+
+		// Game loop (logic)
+		
+		float total_delta = Gdx.graphics.getDeltaTime();
+		profiler.begin("Logic");
+		runLogic(total_delta);
+		profiler.end();
+		countFrame(total_delta);
 		
 		// Game loop (drawing)
 
-		Optional<Component> opt_cam = world.tryGetComponent(camera_handle, Camera.class.hashCode());
+		profiler.begin("Draw world");
+		Optional<Camera> opt_cam = world.tryGetComponent(camera_handle, Camera.class);
+		boolean is_culling = false;
 		if (opt_cam.isPresent()) {
-			((Camera)opt_cam.get()).setActive();
+			opt_cam.get().setActive();
+			is_culling = opt_cam.get().getViewBounds(view_bounds);
 		}
 		render_target.begin();
 		ScreenUtils.clear(bg_color);
 		spritebatch.begin();
 		
-		HashSet<Component> drawables_set = world.getComponentsOfClass(Drawable.class.hashCode());
-		ArrayList<Drawable> drawables = new ArrayList<>();
-		for (Component c : drawables_set) drawables.add((Drawable)c);
-		Collections.sort(drawables);
-		for (Drawable d : drawables) {
-			Object2DHandle obj_handle = d.getOwner();
-			Optional<Object2D> obj = world.tryGet(obj_handle);
-			if (obj.isPresent()) {
-				if (!obj.get().is_visible) continue;
-			} else continue;
+		profiler.begin("Sort drawables");
+		RenderList render_list = world.renderList();
+		render_list.update(); // Only sorts if drawables were added or their z or texture changed
+		if (profiler.isEnabled()) {
+			render_list.countTextureSwitches();
+			texture_switches_saved = render_list.getUngroupedTextureSwitches() - render_list.getTextureSwitches();
+		}
+		profiler.end();
+		int render_calls = spritebatch.totalRenderCalls;
+		boolean is_profiling = profiler.isEnabled();
+		culled_count = 0;
+		for (int i = 0; i < render_list.size(); i++) {
+			Drawable d = render_list.get(i);
+			if (!d.render_visible) continue;
+			if (is_culling && d.getBounds(drawable_bounds) && !view_bounds.overlaps(drawable_bounds)) {
+				// Entirely outside the camera's view
+				culled_count++;
+				continue;
+			}
+			if (is_profiling) profiler.begin(ComponentType.of(d.getClass()).getName());
 			d.draw(spritebatch);
+			if (is_profiling) profiler.end();
 		}
+		profiler.begin("Flush batch");
 		spritebatch.end();
+		profiler.end();
+		batch_flushes = spritebatch.totalRenderCalls - render_calls;
 
 		if (show_colliders) {
+			profiler.begin("Draw colliders");
 			shaperenderer.begin();
 			shaperenderer.setColor(1, 0, 0, 1);
-			HashSet<Component> colliders = world.getComponentsOfClass(Collider.class.hashCode());
-			for (Component c : colliders) {
-				Collider collider = (Collider)c;
-				float[] verts = collider.getTransformedVertices();
-				shaperenderer.polygon(verts);
-			}
+			world.query(Collider.class).forEach(collider -> shaperenderer.polygon(collider.getTransformedVertices()));
 			shaperenderer.end();
+			profiler.end();
 		}
 		
 		render_target.end();
+		profiler.end();
 
 		// Present the render target to the screen (Letterboxed)
 
+		profiler.begin("Blit render target");
 		ScreenUtils.clear(letterbox_color);
 		float win_size_x = io.getDisplaySizeX();
 		float win_size_y = io.getDisplaySizeY();
@@ -385,31 +557,43 @@ public class TileBeanEngine {
 		float rt_h = scale_h * render_target_height;
 		spritebatch.draw(rt_tex, -rt_w * .5f, -rt_h * .5f, rt_w, rt_h, 0, 0, render_target_width, render_target_height, false, true);
 		spritebatch.end();
+		profiler.end();
 
 		// Run the GUI and then render it
 
+		profiler.begin("GUI");
 		game.runGUI();
+		profiler.end();
 
+		profiler.begin("ImGui render");
 		ImGui.render();
 		imgui_gl3.renderDrawData(ImGui.getDrawData());
+		profiler.end();
 
 		// Finish up
 		
+		if (profiler.isEnabled() && profiler.export_key >= 0 && input.isKeyDown(profiler.export_key) && !input.wasKeyDown(profiler.export_key)) {
+			profiler.exportChromeTrace(profiler.export_path);
+		}
 		input.nextFrame();
 
 		// Handle ImGui viewports and input
 		
 		if (io.hasConfigFlags(ImGuiConfigFlags.ViewportsEnable)) {
+			profiler.begin("ImGui viewports");
 			long temp_current_context = GLFW.glfwGetCurrentContext();
 			ImGui.updatePlatformWindows();
 			ImGui.renderPlatformWindowsDefault();
 			GLFW.glfwMakeContextCurrent(temp_current_context);
+			profiler.end();
 		}
 
 		if (io.getWantCaptureKeyboard() || io.getWantCaptureMouse()) {
 			temp_input_processor = Gdx.input.getInputProcessor();
 			Gdx.input.setInputProcessor(null);
 		}
+
+		profiler.endFrame();
 	}
 
 }
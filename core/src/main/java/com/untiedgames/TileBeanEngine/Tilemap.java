@@ -3,6 +3,7 @@ package com.untiedgames.TileBeanEngine;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
@@ -12,15 +13,44 @@ import com.untiedgames.TileBeanEngine.AssetSystem.TilesetAsset;
 import com.untiedgames.TileBeanEngine.AssetSystem.TilesetAssetHandle;
 import com.untiedgames.TileBeanEngine.AssetSystem.TilesetAsset.TileInfo;
 
+/**
+ * Tilemap draws a grid of tiles from a tileset.
+ *
+ * The map is split into chunks of chunk_size * chunk_size tiles. Each chunk's tiles are baked once into a vertex array,
+ * which is handed to the SpriteBatch in one call, instead of working out every tile's quad every frame.
+ * A chunk is only baked again when placeTile or setContents changes it (or the tileset changes).
+ */
+@UpdateAccess(parallelInstances = true)
 public class Tilemap extends Drawable {
 
+	public static final int chunk_size = 32; // The width and height of a chunk, in tiles
+	private static final int floats_per_tile = 20; // 4 vertices of x, y, color, u, v, as the SpriteBatch expects
+
 	private TilesetAssetHandle tileset_handle;
 	private int[] contents;
 	private int width;
 	private int height;
 
+	// Baked chunks, in rows of chunks_x
+	private int chunks_x;
+	private int chunks_y;
+	private float[][] chunk_vertices;
+	private int[] chunk_vertex_counts; // The number of floats of each chunk's vertices in use
+	private float[] chunk_colors; // The packed color each chunk's vertices have
+	private boolean[] is_chunk_dirty; // Whether each chunk needs to be baked again before it's drawn
+	private Texture baked_texture; // The tileset texture and tile size the chunks were baked with
+	private int baked_tile_width;
+	private int baked_tile_height;
+
 	public boolean show_collision = false; // A debug switch that can be toggled on at any time to show tile collision over the drawn tiles.
 
+	// Matrices reused each draw. The local matrix holds the owner's world transform, and is only rebuilt when that changes.
+	private Matrix4 local_matrix = new Matrix4();
+	private Object2D local_matrix_obj;
+	private long local_matrix_version;
+	private Matrix4 original_matrix = new Matrix4();
+	private Matrix4 transform_matrix = new Matrix4();
+
 	/**
 	 * Creates a Tlemap with the given width and height, in tiles.
 	 */
@@ -34,15 +64,30 @@ public class Tilemap extends Drawable {
 				contents[i] = Integer.MAX_VALUE;
 			}
 		}
+		chunks_x = size > 0 ? (width + chunk_size - 1) / chunk_size : 0;
+		chunks_y = size > 0 ? (height + chunk_size - 1) / chunk_size : 0;
+		chunk_vertices = new float[chunks_x * chunks_y][];
+		chunk_vertex_counts = new int[chunks_x * chunks_y];
+		chunk_colors = new float[chunks_x * chunks_y];
+		is_chunk_dirty = new boolean[chunks_x * chunks_y];
+		markAllDirty();
 	}
 
 	/**
 	 * Sets the contents of the entire Tilemap. If the array passed to this function is not the same size as the Tilemap, nothing happens.
+	 * The Tilemap keeps the array, so if you change it afterwards, call setContents again (or use placeTile) to have the changes drawn.
 	 */
 	public void setContents(int[] contents) {
 		if (contents == null) return;
 		if (contents.length != width * height) return;
 		this.contents = contents;
+		markAllDirty();
+	}
+
+	private void markAllDirty() {
+		for (int i = 0; i < is_chunk_dirty.length; i++) {
+			is_chunk_dirty[i] = true;
+		}
 	}
 
 	/**
@@ -62,6 +107,7 @@ public class Tilemap extends Drawable {
 		}
 
 		this.tileset_handle = handle;
+		markAllDirty();
 	}
 
 	public int getWidth() {
@@ -94,7 +140,9 @@ public class Tilemap extends Drawable {
 	 */
 	public void placeTile(int id, int x, int y) {
 		if (x < 0 || y < 0 || x >= width || y >= height) return;
+		if (contents[y * width + x] == id) return;
 		contents[y * width + x] = id;
+		is_chunk_dirty[(y / chunk_size) * chunks_x + x / chunk_size] = true;
 	}
 
 	/**
@@ -108,6 +156,13 @@ public class Tilemap extends Drawable {
 
 	public void update(float delta) {}
 
+	public int getTextureKey() {
+		TilesetAsset tileset = TileBeanEngine.assets.get(tileset_handle);
+		if (tileset == null || !tileset.isLoaded()) return 0;
+		Optional<Texture> opt_texture = tileset.getTexture();
+		return opt_texture.isPresent() ? opt_texture.get().getTextureObjectHandle() : 0;
+	}
+
 	public void draw(SpriteBatch spritebatch) {
 		Optional<TilesetAsset> opt_tileset = TileBeanEngine.assets.tryGet(tileset_handle);
 		if (!opt_tileset.isPresent()) return;
@@ -131,44 +186,65 @@ public class Tilemap extends Drawable {
 		if (opt_cam.isPresent()) {
 			Object2D cam = opt_cam.get();
 			cam_z = cam.z;
-			Optional<Component> opt_cam_component = TileBeanEngine.world.tryGetComponent(cam_handle, Camera.class.hashCode());
+			float cam_x = cam.getWorldX();
+			float cam_y = cam.getWorldY();
+			Optional<Camera> opt_cam_component = TileBeanEngine.world.tryGetComponent(cam_handle, Camera.class);
 			if (opt_cam_component.isPresent()) {
-				Camera cam_component = (Camera)opt_cam_component.get();
-				left = (Math.round(cam.x) - cam_component.getWidth() / 2) / tile_width;
-				right = (Math.round(cam.x) + cam_component.getWidth() / 2) / tile_width;
-				top = (Math.round(cam.y) - cam_component.getHeight() / 2) / tile_height;
-				bottom = (Math.round(cam.y) + cam_component.getHeight() / 2) / tile_height;
+				Camera cam_component = opt_cam_component.get();
+				left = (Math.round(cam_x) - cam_component.getWidth() / 2) / tile_width;
+				right = (Math.round(cam_x) + cam_component.getWidth() / 2) / tile_width;
+				top = (Math.round(cam_y) - cam_component.getHeight() / 2) / tile_height;
+				bottom = (Math.round(cam_y) + cam_component.getHeight() / 2) / tile_height;
 			}
 		}
 
-		Matrix4 original_matrix = spritebatch.getTransformMatrix().cpy();
-		Matrix4 m = new Matrix4();
-		m.scale(obj.scale_x, obj.scale_y, 0);
-		m.translate(obj.x, obj.y, 0);
-		if (obj.rotation != 0.0f) m.rotate(0, 0, 1, obj.rotation * 180.0f / (float)Math.PI);
-		Matrix4 transform_matrix = original_matrix.cpy().mul(m);
+		Matrix4 original_matrix = this.original_matrix.set(spritebatch.getTransformMatrix());
+		long version = obj.getWorldTransformVersion();
+		if (obj != local_matrix_obj || version != local_matrix_version) {
+			// The owner (or something it's attached to) moved, or this is the first draw, so rebuild the local matrix
+			local_matrix.set(obj.getWorldTransform());
+			local_matrix_obj = obj;
+			local_matrix_version = version;
+		}
+		Matrix4 transform_matrix = this.transform_matrix.set(original_matrix).mul(local_matrix);
 		spritebatch.setTransformMatrix(transform_matrix);
 
-		spritebatch.setColor(obj.r, obj.g, obj.b, obj.a);
+		if (texture != baked_texture || tile_width != baked_tile_width || tile_height != baked_tile_height) {
+			// The tileset was reloaded or changed, so every chunk needs baking again
+			markAllDirty();
+			baked_texture = texture;
+			baked_tile_width = tile_width;
+			baked_tile_height = tile_height;
+		}
+		float color = Color.toFloatBits(obj.r, obj.g, obj.b, obj.a);
+
+		// Draw each chunk with any tiles in view, baking it first if it has changed
+		if (right >= 0 && bottom >= 0 && left < width && top < height) {
+			int chunk_left = Math.max(left, 0) / chunk_size;
+			int chunk_right = Math.min(right, width - 1) / chunk_size;
+			int chunk_top = Math.max(top, 0) / chunk_size;
+			int chunk_bottom = Math.min(bottom, height - 1) / chunk_size;
+			for (int chunk_y = chunk_top; chunk_y <= chunk_bottom; chunk_y++) {
+				for (int chunk_x = chunk_left; chunk_x <= chunk_right; chunk_x++) {
+					int chunk = chunk_y * chunks_x + chunk_x;
+					if (is_chunk_dirty[chunk]) {
+						bakeChunk(chunk_x, chunk_y, tileset, texture, tile_width, tile_height, color);
+					} else if (chunk_colors[chunk] != color) {
+						recolorChunk(chunk, color);
+					}
+					if (chunk_vertex_counts[chunk] > 0) spritebatch.draw(texture, chunk_vertices[chunk], 0, chunk_vertex_counts[chunk]);
+				}
+			}
+		}
 
 		ShapeRenderer shaperenderer = TileBeanEngine.getShapeRenderer();
 		ArrayList<Float> collision_verts = null;
 		if (show_collision) {
 			collision_verts = new ArrayList<>();
-		}
-
-		for (int y = top; y <= bottom; y++) {
-			if (y < 0) continue;
-			if (y >= height) break;
-			for (int x = left; x <= right; x++) {
-				if (x < 0) continue;
-				if (x >= width) break;
-				int tile_id = contents[y * width + x];
-				TileInfo tile = tileset.getTileInfo(tile_id);
-				if (tile.isUnassigned()) continue; // No tile to draw
-				spritebatch.draw(texture, x * tile_width, y * tile_height, tile_width, tile_height, tile.getX() * tile_width, tile.getY() * tile_height, tile_width, tile_height, false, true);
-
-				if (show_collision) {
+			for (int y = Math.max(top, 0); y <= bottom && y < height; y++) {
+				for (int x = Math.max(left, 0); x <= right && x < width; x++) {
+					TileInfo tile = tileset.getTileInfo(contents[y * width + x]);
+					if (tile.isUnassigned()) continue; // No tile
 					TileCollisionShape shape = PrimitiveTileCollisionShape.get(tile.getTileType());
 					if (shape != null) {
 						for (int i = 0; i < shape.count() + 2; i++) {
@@ -214,4 +290,54 @@ public class Tilemap extends Drawable {
 		}
 	}
 
+	/**
+	 * Bakes the quads of every tile in a chunk into its vertex array, in the same layout SpriteBatch uses for a draw.
+	 */
+	private void bakeChunk(int chunk_x, int chunk_y, TilesetAsset tileset, Texture texture, int tile_width, int tile_height, float color) {
+		int chunk = chunk_y * chunks_x + chunk_x;
+		int x_start = chunk_x * chunk_size;
+		int y_start = chunk_y * chunk_size;
+		int x_end = Math.min(x_start + chunk_size, width);
+		int y_end = Math.min(y_start + chunk_size, height);
+		float inv_texture_width = 1.0f / texture.getWidth();
+		float inv_texture_height = 1.0f / texture.getHeight();
+
+		float[] vertices = chunk_vertices[chunk];
+		if (vertices == null) vertices = chunk_vertices[chunk] = new float[(x_end - x_start) * (y_end - y_start) * floats_per_tile];
+		int i = 0;
+		for (int y = y_start; y < y_end; y++) {
+			for (int x = x_start; x < x_end; x++) {
+				TileInfo tile = tileset.getTileInfo(contents[y * width + x]);
+				if (tile.isUnassigned()) continue; // No tile to draw
+				float x1 = x * tile_width;
+				float y1 = y * tile_height;
+				float x2 = x1 + tile_width;
+				float y2 = y1 + tile_height;
+				// The tileset image is flipped vertically, since negative Y is up
+				float u = tile.getX() * tile_width * inv_texture_width;
+				float v = tile.getY() * tile_height * inv_texture_height;
+				float u2 = u + tile_width * inv_texture_width;
+				float v2 = v + tile_height * inv_texture_height;
+				vertices[i++] = x1; vertices[i++] = y1; vertices[i++] = color; vertices[i++] = u; vertices[i++] = v;
+				vertices[i++] = x1; vertices[i++] = y2; vertices[i++] = color; vertices[i++] = u; vertices[i++] = v2;
+				vertices[i++] = x2; vertices[i++] = y2; vertices[i++] = color; vertices[i++] = u2; vertices[i++] = v2;
+				vertices[i++] = x2; vertices[i++] = y1; vertices[i++] = color; vertices[i++] = u2; vertices[i++] = v;
+			}
+		}
+		chunk_vertex_counts[chunk] = i;
+		chunk_colors[chunk] = color;
+		is_chunk_dirty[chunk] = false;
+	}
+
+	/**
+	 * Changes the color of a baked chunk's vertices, for when the owner's color changes.
+	 */
+	private void recolorChunk(int chunk, float color) {
+		float[] vertices = chunk_vertices[chunk];
+		for (int i = 2; i < chunk_vertex_counts[chunk]; i += 5) {
+			vertices[i] = color;
+		}
+		chunk_colors[chunk] = color;
+	}
+
 }
@@ -4,6 +4,7 @@ package com.untiedgames.TileBeanEngine;
  * TimerInstance is a component which acts like a stopwatch. You give it a duration and tell it to start, and it will count down to zero over time.
  * The isFinished method can be used in conjunction with clearFinished() to perform tasks when the timer is up. (See isFinished comments below for example)
  */
+@UpdateAccess(parallelInstances = true)
 public class TimerInstance extends Component {
 
 	public enum STATE {
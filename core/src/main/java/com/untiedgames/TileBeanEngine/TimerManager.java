@@ -7,6 +7,7 @@ import java.util.Optional;
  * It's a good example of a component which can support many instances of a "sub-component."
  * The TimerInstance component may also be used individually, if your object only needs one timer.
  */
+@UpdateAccess(parallelInstances = true)
 public class TimerManager extends Component {
 
 	private ArrayList<TimerInstance> timers;
@@ -0,0 +1,98 @@
+package com.untiedgames.TileBeanEngine;
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.Affine2;
+
+/**
+ * TransformStore holds the world transform of every object in a World, in parallel primitive arrays indexed by handle index.
+ * Systems which look at lots of objects (culling, spatial queries, etc.) can read contiguous floats instead of following a pointer to each Object2D.
+ *
+ * The arrays hold the same values as Object2D.getWorldTransform (an Affine2: m00, m01, m02 in the first row, m10, m11, m12 in the second),
+ * so m02 and m12 are the object's location in world space. They're filled by World.updateTransforms, which the engine calls once per frame,
+ * after game logic and before drawing. They're a snapshot as of that call: Objects moved during a logic step aren't reflected until the next one.
+ * That makes the store a good fit for drawing, and a poor fit for collision, which needs each move to be seen right away.
+ *
+ * The store is read-only. Object2D's fields remain the source of truth, so move objects through them as usual.
+ * Access it through World.transforms(). Live objects are listed in indices[0 .. count - 1]. Use isCurrent to check that a handle's slot was filled.
+ *
+ * Example:
+ *     TransformStore t = TileBeanEngine.world.transforms();
+ *     for (int k = 0; k < t.count; k++) {
+ *         int i = t.indices[k];
+ *         if (t.m02[i] > right_edge) offscreen++;
+ *     }
+ */
+public class TransformStore {
+
+	public float[] m00 = new float[0];
+	public float[] m01 = new float[0];
+	public float[] m02 = new float[0]; // World X
+	public float[] m10 = new float[0];
+	public float[] m11 = new float[0];
+	public float[] m12 = new float[0]; // World Y
+	public float[] z = new float[0];
+
+	public int[] indices = new int[0]; // Handle indices of the live objects, packed from 0 to count - 1
+	public int count = 0; // The number of live objects as of the last World.updateTransforms
+
+	private int[] generations = new int[0]; // The handle generation each slot was filled for, so a slot reused since then isn't mistaken for current
+	private int capacity = 0;
+	private World world;
+
+	TransformStore(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Returns true if the slot of the given handle holds the transform of the object it refers to, false if the object was added (or removed) since the last World.updateTransforms.
+	 */
+	public boolean isCurrent(Object2DHandle handle) {
+		int i = handle.index;
+		return i >= 0 && i < capacity && generations[i] == handle.generation && world.exists(handle);
+	}
+
+	/**
+	 * Starts a refill, for a world with the given number of slots.
+	 */
+	void begin(int slot_count) {
+		if (slot_count > capacity) {
+			capacity = Math.max(slot_count, capacity * 2);
+			m00 = Arrays.copyOf(m00, capacity);
+			m01 = Arrays.copyOf(m01, capacity);
+			m02 = Arrays.copyOf(m02, capacity);
+			m10 = Arrays.copyOf(m10, capacity);
+			m11 = Arrays.copyOf(m11, capacity);
+			m12 = Arrays.copyOf(m12, capacity);
+			z = Arrays.copyOf(z, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+			generations = new int[capacity];
+		}
+		invalidate(); // Slots not filled again are stale
+	}
+
+	/**
+	 * Marks every slot stale, for when the objects are replaced all at once (World.clear and World.restore).
+	 */
+	void invalidate() {
+		Arrays.fill(generations, 0, capacity, -1);
+		count = 0;
+	}
+
+	/**
+	 * Stores an object's current world transform in its slot.
+	 */
+	void put(Object2DHandle handle, Object2D obj) {
+		int i = handle.index;
+		Affine2 m = obj.getWorldTransform();
+		m00[i] = m.m00;
+		m01[i] = m.m01;
+		m02[i] = m.m02;
+		m10[i] = m.m10;
+		m11[i] = m.m11;
+		m12[i] = m.m12;
+		z[i] = obj.z;
+		generations[i] = handle.generation;
+		indices[count++] = i;
+	}
+
+}
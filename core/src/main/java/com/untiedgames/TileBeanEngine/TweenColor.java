@@ -4,6 +4,7 @@ import java.util.Optional;
 /**
  * TweenColor represents a change in color of a game object over time.
  */
+@UpdateAccess(writesObject2D = true, parallelInstances = true)
 public class TweenColor extends Tween {
 
 	public TweenColor() {
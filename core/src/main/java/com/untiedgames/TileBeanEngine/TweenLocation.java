@@ -4,6 +4,7 @@ import java.util.Optional;
 /**
  * TweenLocation represents a change in location of a game object over time.
  */
+@UpdateAccess(writesObject2D = true, parallelInstances = true)
 public class TweenLocation extends Tween {
 
 	public TweenLocation() {
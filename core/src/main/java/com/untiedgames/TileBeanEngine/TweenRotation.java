@@ -4,6 +4,7 @@ import java.util.Optional;
 /**
  * TweenRotation represents a change in rotation of a game object over time.
  */
+@UpdateAccess(writesObject2D = true, parallelInstances = true)
 public class TweenRotation extends Tween {
 
 	public TweenRotation() {
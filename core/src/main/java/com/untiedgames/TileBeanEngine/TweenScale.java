@@ -4,6 +4,7 @@ import java.util.Optional;
 /**
  * TweenScale represents a change in scale of a game object over time.
  */
+@UpdateAccess(writesObject2D = true, parallelInstances = true)
 public class TweenScale extends Tween {
 
 	public TweenScale() {
@@ -0,0 +1,62 @@
+package com.untiedgames.TileBeanEngine;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * UpdateAccess declares what a component class touches in its update method, so the UpdateScheduler knows which classes can be updated at the same time.
+ * A component class always writes to its own components. Beyond that, it may declare that it reads or writes:
+ * - Object2D fields (location, rotation, scale, color, etc.)
+ * - Assets in the AssetManager
+ * - Components of other classes (derived classes are covered too)
+ *
+ * Two classes conflict (and are never updated at the same time) if either one writes something the other reads or writes.
+ * A class without this annotation is assumed to touch anything, so it's always updated on its own.
+ * The annotation is not inherited: If you derive from an annotated class and override update, declare your class's access again.
+ *
+ * Example:
+ *     @UpdateAccess(readsAssets = true, parallelInstances = true)
+ *     public class Sprite extends Drawable { ... }
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface UpdateAccess {
+
+	/**
+	 * Whether update reads the fields of any Object2D. This includes its transform getters (such as getWorldTransform) and Collider.getTransformedVertices.
+	 */
+	boolean readsObject2D() default false;
+
+	/**
+	 * Whether update writes the fields of any Object2D. (Only the component's own owner, if parallelInstances is also true.)
+	 */
+	boolean writesObject2D() default false;
+
+	/**
+	 * Whether update reads assets.
+	 */
+	boolean readsAssets() default false;
+
+	/**
+	 * Whether update adds, removes, loads, or otherwise changes assets.
+	 */
+	boolean writesAssets() default false;
+
+	/**
+	 * Component classes whose components update reads, other than its own.
+	 */
+	Class<? extends Component>[] reads() default {};
+
+	/**
+	 * Component classes whose components update writes, other than its own.
+	 */
+	Class<? extends Component>[] writes() default {};
+
+	/**
+	 * Whether components of this class can be updated at the same time as each other.
+	 * This is true when each component only touches its own state (and its own owner's Object2D), which is the case for most components.
+	 */
+	boolean parallelInstances() default false;
+
+}
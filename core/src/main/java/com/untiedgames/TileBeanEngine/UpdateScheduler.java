@@ -0,0 +1,265 @@
+package com.untiedgames.TileBeanEngine;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * UpdateScheduler updates the components of a World on several threads at once, based on what each component class declares with UpdateAccess.
+ *
+ * Component types are grouped into phases. Types in the same phase don't conflict with each other, so they're updated concurrently on a ForkJoinPool.
+ * Each type is placed in the phase right after the last earlier type (by ComponentType ID) it conflicts with, so any two conflicting types
+ * are still updated in the same order as a serial update would use. Each phase finishes completely before the next one starts.
+ * Types declared with parallelInstances are also split into chunks, so a single large store can use every core.
+ *
+ * Types without an UpdateAccess annotation get a phase to themselves and are updated on the calling thread, exactly as before.
+ *
+ * While a phase runs, World.commands() returns a separate command buffer for each task. When the phase finishes, those buffers are
+ * appended to the world's buffer in task order, so the commands (and the final flush) come out the same every run, no matter
+ * how the threads were scheduled.
+ *
+ * Enable it with TileBeanEngine.parallel_updates.
+ */
+class UpdateScheduler {
+
+	private static final int min_chunk_size = 256; // Smallest number of components worth handing to another thread
+
+	private ForkJoinPool pool;
+	private World world;
+
+	// The current plan. phases[p] lists the type IDs updated during phase p, in ID order.
+	private int[][] phases = new int[0][];
+	private String[] phase_names = new String[0]; // Profiler marker for each phase
+	private boolean[] exclusive = new boolean[0]; // Indexed by type ID. Whether the type must be updated alone, on the calling thread.
+	private boolean[] chunked = new boolean[0]; // Indexed by type ID. Whether the type's components may be updated in chunks, concurrently.
+	private int type_count = -1; // The number of registered component types when the plan was made
+
+	private ArrayList<Task> tasks = new ArrayList<>(); // Reused between phases, along with their command buffers
+	private int task_count = 0;
+	private Phase phase = new Phase();
+
+	UpdateScheduler() {
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Updates every component in the world once.
+	 */
+	void update(World world, float delta) {
+		if (this.world != world) {
+			this.world = world;
+			type_count = -1;
+			tasks.clear(); // Their command buffers belong to the old world
+			task_count = 0;
+		}
+		plan();
+
+		for (int p = 0; p < phases.length; p++) {
+			TileBeanEngine.profiler.begin(phase_names[p]);
+			runPhase(phases[p], delta);
+			TileBeanEngine.profiler.end();
+		}
+	}
+
+	private void runPhase(int[] ids, float delta) {
+		if (ids.length == 1 && exclusive[ids[0]]) {
+			// Update exclusive types on this thread, with the world's own command buffer
+			ComponentStore store = findStore(ids[0]);
+			if (store == null) return;
+			for (int i = 0; i < store.activeCount(); i++) {
+				store.get(i).update(delta);
+			}
+			return;
+		}
+
+		// Split the phase into tasks
+		task_count = 0;
+		int parallelism = pool.getParallelism();
+		for (int id : ids) {
+			ComponentStore store = findStore(id);
+			if (store == null || store.activeCount() == 0) continue;
+			int size = store.activeCount(); // Disabled and sleeping components are skipped
+			int chunk_size = size;
+			if (chunked[id]) chunk_size = Math.max(min_chunk_size, (size + parallelism - 1) / parallelism);
+			for (int start = 0; start < size; start += chunk_size) {
+				nextTask().set(store, start, Math.min(start + chunk_size, size), delta);
+			}
+		}
+		if (task_count == 0) return;
+
+		if (task_count == 1) {
+			tasks.get(0).compute(); // Not worth handing off to the pool
+		} else {
+			phase.reinitialize();
+			pool.invoke(phase); // Returns once every task has finished, and rethrows anything a task threw
+		}
+
+		// Merge the commands recorded by each task, in task order
+		CommandBuffer commands = world.commands();
+		for (int t = 0; t < task_count; t++) {
+			commands.append(tasks.get(t).commands);
+		}
+	}
+
+	/**
+	 * Shuts down the thread pool.
+	 */
+	void dispose() {
+		pool.shutdown();
+	}
+
+	private ComponentStore findStore(int id) {
+		if (id >= world.components.length) return null;
+		return world.components[id];
+	}
+
+	private Task nextTask() {
+		if (task_count == tasks.size()) tasks.add(new Task());
+		return tasks.get(task_count++);
+	}
+
+	/**
+	 * Builds the phases again if a component class has been registered since the last time.
+	 */
+	private void plan() {
+		int count = ComponentType.count();
+		if (type_count == count) return;
+
+		Access[] access = new Access[count];
+		int[] phase_of = new int[count];
+		exclusive = new boolean[count];
+		chunked = new boolean[count];
+		ArrayList<ArrayList<Integer>> list = new ArrayList<>();
+
+		for (int id = 0; id < count; id++) {
+			ComponentType type = ComponentType.get(id);
+			if (Modifier.isAbstract(type.getComponentClass().getModifiers())) continue; // Never has components of its own, so it doesn't need a phase
+			Access a = new Access(type);
+			access[id] = a;
+			exclusive[id] = a.exclusive;
+			chunked[id] = a.parallel_instances;
+
+			// Make sure the stores this type touches exist now, so no task has to create one while others are reading
+			for (ComponentType t : a.reads) world.query(t.getComponentClass()).storeCount();
+			for (ComponentType t : a.writes) world.query(t.getComponentClass()).storeCount();
+
+			int p = 0;
+			for (int other = 0; other < id; other++) {
+				if (access[other] != null && a.conflicts(access[other])) p = Math.max(p, phase_of[other] + 1);
+			}
+			if (a.exclusive) p = list.size(); // Exclusive types always start a new phase, after everything before them
+			phase_of[id] = p;
+			while (list.size() <= p) list.add(new ArrayList<Integer>());
+			list.get(p).add(id);
+		}
+
+		phases = new int[list.size()][];
+		phase_names = new String[list.size()];
+		for (int p = 0; p < phases.length; p++) {
+			ArrayList<Integer> ids = list.get(p);
+			phases[p] = new int[ids.size()];
+			StringBuilder name = new StringBuilder("Phase " + p + ":");
+			for (int i = 0; i < ids.size(); i++) {
+				phases[p][i] = ids.get(i);
+				name.append(' ').append(ComponentType.get(ids.get(i)).getName());
+			}
+			phase_names[p] = name.toString();
+		}
+		type_count = count;
+	}
+
+	/**
+	 * Runs every task of the current phase and waits for all of them.
+	 */
+	private class Phase extends RecursiveAction {
+		protected void compute() {
+			for (int t = 0; t < task_count; t++) {
+				tasks.get(t).reinitialize();
+			}
+			invokeAll(tasks.subList(0, task_count));
+		}
+	}
+
+	/**
+	 * Updates one range of components from one store, recording structural changes into its own command buffer.
+	 */
+	private class Task extends RecursiveAction {
+		private ComponentStore store;
+		private int start, end;
+		private float delta;
+		private CommandBuffer commands;
+
+		void set(ComponentStore store, int start, int end, float delta) {
+			this.store = store;
+			this.start = start;
+			this.end = end;
+			this.delta = delta;
+			if (commands == null) commands = new CommandBuffer(world, false);
+		}
+
+		protected void compute() {
+			world.task_commands.set(commands);
+			try {
+				for (int i = start; i < end; i++) {
+					store.get(i).update(delta);
+				}
+			} finally {
+				world.task_commands.remove();
+			}
+		}
+	}
+
+	/**
+	 * What one component type declared with UpdateAccess, resolved to ComponentTypes.
+	 */
+	private static class Access {
+		boolean exclusive;
+		boolean parallel_instances;
+		boolean reads_object2d, writes_object2d, reads_assets, writes_assets;
+		ArrayList<ComponentType> reads = new ArrayList<>();
+		ArrayList<ComponentType> writes = new ArrayList<>();
+
+		Access(ComponentType type) {
+			UpdateAccess annotation = type.getComponentClass().getAnnotation(UpdateAccess.class);
+			if (annotation == null) {
+				exclusive = true;
+				return;
+			}
+			parallel_instances = annotation.parallelInstances();
+			reads_object2d = annotation.readsObject2D();
+			writes_object2d = annotation.writesObject2D();
+			reads_assets = annotation.readsAssets();
+			writes_assets = annotation.writesAssets();
+			writes.add(type); // A type always writes its own components
+			for (Class<? extends Component> c : annotation.reads()) reads.add(ComponentType.of(c));
+			for (Class<? extends Component> c : annotation.writes()) writes.add(ComponentType.of(c));
+		}
+
+		/**
+		 * Returns true if this type and the other can't be updated at the same time, false otherwise.
+		 */
+		boolean conflicts(Access other) {
+			if (exclusive || other.exclusive) return true;
+			if (writes_object2d && (other.reads_object2d || other.writes_object2d)) return true;
+			if (other.writes_object2d && reads_object2d) return true;
+			if (writes_assets && (other.reads_assets || other.writes_assets)) return true;
+			if (other.writes_assets && reads_assets) return true;
+			for (ComponentType w : writes) {
+				if (overlaps(w, other.reads) || overlaps(w, other.writes)) return true;
+			}
+			for (ComponentType w : other.writes) {
+				if (overlaps(w, reads)) return true;
+			}
+			return false;
+		}
+
+		// Two types overlap if either is the other or inherits from it (reading Drawable covers writing Sprite, and vice versa)
+		private static boolean overlaps(ComponentType type, ArrayList<ComponentType> list) {
+			for (ComponentType t : list) {
+				if (type.isA(t) || t.isA(type)) return true;
+			}
+			return false;
+		}
+	}
+
+}
@@ -1,10 +1,14 @@
 package com.untiedgames.TileBeanEngine;
+import java.lang.reflect.Constructor;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Optional;
 import java.util.HashSet;
-import java.util.Map;
 
 /**
  * The World class is an entity-component system (ECS) which contains all objects in the game world (entities) and their specialized parts (components).
@@ -13,20 +17,35 @@ public class World {
 
 	private WorldKey wk;
 	private GenArray<Object2D, Object2DHandle> contents; // Collection of all entities in the ECS
-	HashMap<Integer, ArrayList<Component>> components; // Map of class hash codes to component lists
-	HashMap<Integer, ArrayList<Integer>> component_type_info; // Map of class hash codes to lists of hash codes of all classes along inheritance path to Component
-	HashMap<Object2DHandle, ArrayList<Integer>> object_component_types; // Map of entities to hash codes of classes of components that they own
+	private CommandBuffer commands; // Structural changes recorded during updates, applied at the end of each logic step
+	private TransformStore transforms; // World transforms of every object in primitive arrays, filled by updateTransforms
+	private ArrayList<Object2D> sleepers = new ArrayList<>(); // Every sleeping object
+	private SleepTimers sleep_timers = new SleepTimers(); // Sleeping objects which wake up on their own, by wake time
+	private double sleep_clock = 0; // Seconds of logic steps so far, which wake times are measured against
+	private ArrayList<Component> activity_changes = new ArrayList<>(); // Components which were enabled, disabled, put to sleep, or woken since the last logic step
+	private ByteBuffer snapshot_buffer = ByteBuffer.allocate(1 << 16); // Reused by snapshot(), and grown as needed
+
+	private static final int snapshot_magic = 0x54425753; // "TBWS"
+	private static final int snapshot_version = 2; // Version 2 added sleep state and whether each component is enabled
+	ComponentStore[] components; // Component stores indexed by ComponentType ID. A store is null until this world needs it.
 	HashMap<Object2DHandle, ArrayList<Component>> object_components; // Map of entities to components that they own
 	HashMap<String, Object2DHandle> names; // Map of entity names to entity handles
+	HashMap<Object2DHandle, String> object_names; // Map of entity handles to entity names (the reverse of names)
+	ComponentQuery<?>[] queries; // Cached queries indexed by ComponentType ID
+	RenderList render_list; // Every Drawable in the world, sorted by z
+	final ThreadLocal<CommandBuffer> task_commands = new ThreadLocal<>(); // Set by UpdateScheduler on its worker threads, so each task records into its own buffer
 
 	public World() {
 		wk = new WorldKey();
-		contents = new GenArray<Object2D, Object2DHandle>(Object2DHandle.class);
-		components = new HashMap<>();
-		component_type_info = new HashMap<>();
-		object_component_types = new HashMap<>();
+		contents = new GenArray<Object2D, Object2DHandle>(Object2DHandle::new);
+		components = new ComponentStore[16];
 		object_components = new HashMap<>();
 		names = new HashMap<>();
+		object_names = new HashMap<>();
+		queries = new ComponentQuery<?>[16];
+		commands = new CommandBuffer(this);
+		render_list = new RenderList(this);
+		transforms = new TransformStore(this);
 	}
 
 	/**
@@ -49,57 +68,668 @@ public class World {
 		}
 		Object2DHandle ret = contents.add(obj);
 		obj.handle = ret;
-		object_component_types.put(ret, new ArrayList<Integer>());
 		object_components.put(ret, new ArrayList<Component>());
 		if (name != null) {
-			if (!name.isEmpty()) names.put(name, ret);
+			if (!name.isEmpty()) {
+				Object2DHandle previous = names.put(name, ret);
+				if (previous != null) object_names.remove(previous);
+				object_names.put(ret, name);
+			}
 		}
 		return ret;
 	}
 
 	/**
-	 * Removes an object from the world.
+	 * Creates the given number of objects from a prefab, adds them to the world, and returns their handles.
+	 * Storage is reserved for all of the objects and components up front, and each component's initialize method is called
+	 * once every object has all of its components, in the order the objects were created.
+	 */
+	public Object2DHandle[] instantiate(Prefab prefab, int count) {
+		Object2DHandle[] ret = new Object2DHandle[Math.max(count, 0)];
+		if (ret.length == 0) return ret;
+		int component_count = prefab.getComponentCount();
+
+		contents.ensureCapacity(contents.size() + count);
+		for (int i = 0; i < count; i++) {
+			Object2D obj = prefab.createObject();
+			Object2DHandle handle = contents.add(obj);
+			obj.handle = handle;
+			object_components.put(handle, new ArrayList<Component>(component_count));
+			ret[i] = handle;
+		}
+
+		Component[] added = new Component[count * component_count]; // Components actually added, kept in order for initialize
+		for (int c = 0; c < component_count; c++) {
+			ComponentStore store = null;
+			for (int i = 0; i < count; i++) {
+				Component component = prefab.createComponent(c);
+				if (component == null || component.getOwner().isEmpty()) continue; // Factory returned nothing, or a component that's already added
+				ComponentStore component_store = getStore(ComponentType.of(component.getClass()));
+				if (component_store != store) {
+					store = component_store;
+					store.ensureCapacity(store.size() + count - i);
+				}
+				if (store.has(ret[i])) continue; // The prefab has two components of the same class, and only one is allowed
+
+				object_components.get(ret[i]).add(component);
+				component.setOwner(ret[i], wk);
+				store.add(component, component.isEnabled());
+				addToRenderList(component);
+				added[i * component_count + c] = component;
+			}
+		}
+
+		for (Component component : added) {
+			if (component != null) component.initialize();
+		}
+		return ret;
+	}
+
+	/**
+	 * Removes an object from the world, along with any objects attached to it (see setParent).
+	 * This only visits the components the object owns, so the cost doesn't depend on how many other objects are in the world.
 	 */
 	public void remove(Object2DHandle handle) {
 		if (!handle.isEmpty() || contents.expired(handle)) return;
 
-		String name = getName(handle);
-		if (!name.isEmpty()) {
+		String name = object_names.remove(handle);
+		if (name != null) {
 			names.remove(name);
 		}
 
-		Optional<Object2D> opt = contents.get(handle);
-		if (opt.isPresent()) {
-			Object2D obj = opt.get();
+		Object2D obj = contents.get(handle);
+		if (obj != null) {
 			obj.handle = null;
+			if (obj.is_sleeping) removeSleeper(obj);
+			if (obj.parent != null) {
+				obj.parent.children.remove(obj);
+				obj.parent = null;
+			}
+			if (obj.children != null) {
+				// Remove attached objects too. Go backward, since each one detaches itself from the list.
+				for (int i = obj.children.size() - 1; i >= 0; i--) {
+					remove(obj.children.get(i).handle);
+				}
+			}
 		}
 		contents.remove(handle);
 		
-		//TODO: This could be better if we iterate object_components instead and then only those lists
-		for (ArrayList<Component> list : components.values()) {
-			for (int i = 0; i < list.size();) {
-				if (list.get(i).getOwner().equals(handle)) {
-					list.remove(i);
-				} else i++;
+		ArrayList<Component> obj_comps = object_components.get(handle);
+		if (obj_comps != null) {
+			for (Component c : obj_comps) {
+				findStore(ComponentType.of(c.getClass())).remove(handle); // Swap-remove from the type's store
+				removeFromRenderList(c);
+				c.setOwner(Object2DHandle.empty(), wk);
 			}
 		}
 
-		object_component_types.remove(handle);
 		object_components.remove(handle);
 	}
 
+	/**
+	 * Attaches an object to a parent object. From then on, the child's location, rotation, and scale are relative to the parent,
+	 * so it moves along with it. Removing the parent also removes the child.
+	 * Pass an empty handle as the parent to detach the child again.
+	 * Returns true on success, or false if either handle is invalid, or if the parent is the child itself or is attached to the child.
+	 */
+	public boolean setParent(Object2DHandle child_handle, Object2DHandle parent_handle) {
+		Optional<Object2D> opt_child = tryGet(child_handle);
+		if (!opt_child.isPresent()) return false;
+		Object2D child = opt_child.get();
+
+		Object2D parent = null;
+		if (parent_handle.isEmpty()) {
+			Optional<Object2D> opt_parent = tryGet(parent_handle);
+			if (!opt_parent.isPresent()) return false;
+			parent = opt_parent.get();
+			for (Object2D p = parent; p != null; p = p.parent) {
+				if (p == child) return false; // Would make a loop
+			}
+		}
+		if (child.parent == parent) return true;
+
+		if (child.parent != null) child.parent.children.remove(child);
+		child.parent = parent;
+		if (parent != null) {
+			if (parent.children == null) parent.children = new ArrayList<>();
+			parent.children.add(child);
+		}
+		child.invalidateWorldTransform();
+		return true;
+	}
+
+	/**
+	 * Recalculates the world transform of every object which moved, or whose parent moved, since the last call, and copies them all into the TransformStore (see transforms()).
+	 * Parents are always handled before their children, so each transform is calculated at most once.
+	 * The engine calls this once per frame, after game logic and before drawing.
+	 * (Since an object's properties are plain fields, moving it can't mark anything dirty, so this visits every object.)
+	 */
+	public void updateTransforms() {
+		for (GenArrayEntry<Object2D, Object2DHandle> entry : contents.live()) {
+			Object2D obj = entry.getValue();
+			if (obj.parent == null && obj.children != null) updateTransforms(obj);
+		}
+		transforms.begin(contents.size());
+		for (GenArrayEntry<Object2D, Object2DHandle> entry : contents.live()) {
+			transforms.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the world's TransformStore: The world transform of every object in primitive arrays, as of the last updateTransforms.
+	 */
+	public TransformStore transforms() {
+		return transforms;
+	}
+
+	private void updateTransforms(Object2D obj) {
+		obj.refreshWorldTransform(true);
+		if (obj.children == null) return;
+		for (int i = 0; i < obj.children.size(); i++) {
+			updateTransforms(obj.children.get(i));
+		}
+	}
+
 	/**
 	 * Removes everything from the world.
 	 * (This includes the camera, but a new one will be created automatically. If you're holding a handle to the previous camera, it will have been invalidated.)
 	 */
 	public void clear() {
 		contents.clear();
-		components.clear();
-		object_component_types.clear();
+		for (ComponentStore store : components) {
+			if (store != null) store.clear(); // The stores themselves are kept, since queries hold on to them
+		}
+		render_list.clear();
 		object_components.clear();
+		names.clear();
+		object_names.clear();
+		commands.clear();
+		clearSleepState();
+		transforms.invalidate();
 		TileBeanEngine.setupCamera();
 	}
 
+	/**
+	 * Releases memory held for objects which are no longer in the world. Call this after removing a large number of objects, such as at the end of a level.
+	 * Handles to removed objects stay invalid.
+	 */
+	public void trim() {
+		contents.trim();
+	}
+
+	/**
+	 * Puts an object to sleep until it's woken with wake (or wakeNear). None of a sleeping object's components are updated,
+	 * which makes idle or faraway objects cost nothing per logic step. Sleeping objects are still drawn.
+	 * Like enabling or disabling a component, this takes effect at the end of the current logic step.
+	 */
+	public void sleep(Object2DHandle handle) {
+		sleep(handle, 0);
+	}
+
+	/**
+	 * Puts an object to sleep for the given number of seconds, after which it wakes up on its own. (0 means to sleep until woken.)
+	 * If the object is already sleeping, the time is replaced.
+	 */
+	public void sleep(Object2DHandle handle, float seconds) {
+		Optional<Object2D> opt = tryGet(handle);
+		if (!opt.isPresent()) return;
+		Object2D obj = opt.get();
+		boolean was_sleeping = obj.is_sleeping;
+		synchronized (sleepers) {
+			if (!was_sleeping) {
+				obj.is_sleeping = true;
+				obj.sleep_index = sleepers.size();
+				sleepers.add(obj);
+			}
+			setSleepTime(obj, seconds);
+		}
+		if (!was_sleeping) activityChanged(handle);
+	}
+
+	/**
+	 * Wakes up a sleeping object, so that its components are updated again starting with the next logic step.
+	 */
+	public void wake(Object2DHandle handle) {
+		Optional<Object2D> opt = tryGet(handle);
+		if (!opt.isPresent() || !opt.get().is_sleeping) return;
+		wake(opt.get());
+	}
+
+	/**
+	 * Wakes up every sleeping object within the given distance of the given point (in world space), and returns how many were woken.
+	 * For example, call this with the player's location each step to wake up enemies as the player gets close.
+	 * This checks every sleeping object, so its cost grows with getSleepingCount().
+	 */
+	public int wakeNear(float x, float y, float radius) {
+		int ret = 0;
+		float radius_squared = radius * radius;
+		for (int i = sleepers.size() - 1; i >= 0; i--) { // Backward, since waking removes from the list
+			Object2D obj = sleepers.get(i);
+			float dx = obj.getWorldX() - x;
+			float dy = obj.getWorldY() - y;
+			if (dx * dx + dy * dy <= radius_squared) {
+				wake(obj);
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the number of sleeping objects in the world.
+	 */
+	public int getSleepingCount() {
+		return sleepers.size();
+	}
+
+	/**
+	 * Advances the sleep clock, and wakes the objects whose sleep time has run out. Objects which aren't due yet aren't visited.
+	 * Called by the engine at the start of each logic step.
+	 */
+	void updateSleepTimers(float delta) {
+		sleep_clock += delta;
+		Object2D obj;
+		while ((obj = sleep_timers.peek()) != null && obj.wake_time <= sleep_clock) {
+			wake(obj);
+		}
+	}
+
+	/**
+	 * Moves components whose enabled or sleep state changed into the active or inactive part of their store.
+	 * This is deferred to the end of the logic step (see CommandBuffer.flush), since moving components while the engine is updating them
+	 * would cause some to be skipped or updated twice.
+	 */
+	void applyActivityChanges() {
+		for (int i = 0; i < activity_changes.size(); i++) {
+			Component c = activity_changes.get(i);
+			Object2DHandle handle = c.getOwner();
+			Optional<Object2D> opt = tryGet(handle);
+			if (!opt.isPresent()) continue; // Removed since
+			ComponentStore store = findStore(ComponentType.of(c.getClass()));
+			if (store != null) store.setActive(handle, c.isEnabled() && !opt.get().is_sleeping);
+		}
+		activity_changes.clear();
+	}
+
+	/**
+	 * Records that a component was enabled or disabled.
+	 */
+	void activityChanged(Component component) {
+		synchronized (activity_changes) {
+			activity_changes.add(component);
+		}
+	}
+
+	// Records that all of an object's components may have changed state
+	private void activityChanged(Object2DHandle handle) {
+		ArrayList<Component> obj_comps = object_components.get(handle);
+		if (obj_comps == null) return;
+		synchronized (activity_changes) {
+			activity_changes.addAll(obj_comps);
+		}
+	}
+
+	private void wake(Object2D obj) {
+		obj.is_sleeping = false;
+		removeSleeper(obj);
+		activityChanged(obj.handle);
+	}
+
+	private void removeSleeper(Object2D obj) {
+		synchronized (sleepers) {
+			// Swap-remove, keeping each object's index up to date
+			Object2D last = sleepers.remove(sleepers.size() - 1);
+			if (last != obj) {
+				sleepers.set(obj.sleep_index, last);
+				last.sleep_index = obj.sleep_index;
+			}
+			obj.sleep_index = -1;
+			sleep_timers.remove(obj);
+		}
+	}
+
+	// Sets how long a sleeping object sleeps for, from now. 0 means until woken.
+	private void setSleepTime(Object2D obj, float seconds) {
+		sleep_timers.remove(obj);
+		if (seconds > 0) {
+			obj.wake_time = sleep_clock + seconds;
+			sleep_timers.add(obj);
+		}
+	}
+
+	private void clearSleepState() {
+		for (Object2D obj : sleepers) {
+			obj.is_sleeping = false;
+			obj.sleep_index = -1;
+		}
+		sleepers.clear();
+		sleep_timers.clear();
+		activity_changes.clear();
+	}
+
+	/**
+	 * Saves the state of the world into a compact binary buffer, which can be passed to restore later (quicksaves, checkpoints, level resets, etc.)
+	 * The snapshot holds every object's properties, name, parent, and sleep state, the handle generations (so handles stay valid across a restore),
+	 * and every component which implements Snapshottable, along with whether it's enabled. Other components are left out.
+	 * The buffer can also be written to a file, and restored in a later session as long as the same component classes exist.
+	 */
+	public ByteBuffer snapshot() {
+		while (true) {
+			try {
+				snapshot_buffer.clear();
+				writeSnapshot(snapshot_buffer);
+				break;
+			} catch(BufferOverflowException e) {
+				snapshot_buffer = ByteBuffer.allocate(snapshot_buffer.capacity() * 2); // Too big, try again with more room
+			}
+		}
+		snapshot_buffer.flip();
+		ByteBuffer ret = ByteBuffer.allocate(snapshot_buffer.remaining());
+		ret.put(snapshot_buffer);
+		ret.flip();
+		return ret;
+	}
+
+	/**
+	 * Replaces the contents of the world with a snapshot made by snapshot().
+	 * Handles which were valid when the snapshot was made become valid again, and refer to the same objects (although they are new Object2D instances).
+	 * Restored components are read back with Snapshottable.readSnapshot; their initialize methods are not called.
+	 * Returns true on success, or false if the buffer isn't a valid snapshot (in which case the world is left as it was).
+	 */
+	public boolean restore(ByteBuffer snapshot) {
+		ByteBuffer in = snapshot.duplicate(); // Leave the caller's position alone, so the same snapshot can be restored again
+		if (in.remaining() < 12 || in.getInt() != snapshot_magic) {
+			System.err.println("Failed to restore world: Invalid snapshot.");
+			return false;
+		}
+		int version = in.getInt();
+		if (version < 1 || version > snapshot_version) {
+			System.err.println("Failed to restore world: Unsupported snapshot version " + version + ".");
+			return false;
+		}
+
+		// Read the whole snapshot before touching the world, so a damaged one leaves the world as it was
+		int[] generations;
+		boolean[] is_live;
+		Object2D[] objects; // By handle index
+		int[] order; // Handle indexes, in the order objects were saved
+		int[] parents; // Parent handle index of each object, by handle index, or -1
+		float[] sleep_times; // Sleep time of each sleeping object, by handle index. 0 means until woken.
+		String[] object_names_by_index;
+		ArrayList<ArrayList<Component>> object_comps = new ArrayList<>(); // In the same order as order
+		try {
+			// Look up the constructor for each component class in the snapshot
+			int table_offset = in.getInt();
+			int body_offset = in.position();
+			in.position(table_offset);
+			Constructor<?>[] constructors = new Constructor<?>[checkCount(in.getInt(), 2, in)];
+			for (int i = 0; i < constructors.length; i++) {
+				String class_name = getString(in);
+				try {
+					constructors[i] = Class.forName(class_name).getDeclaredConstructor();
+					constructors[i].setAccessible(true);
+				} catch(Exception e) {
+					System.err.println("Warning: Can't restore components of class \"" + class_name + "\", skipping them. (Does the class have a no-argument constructor?)");
+				}
+			}
+			in.position(body_offset);
+
+			// Handle generations
+			generations = new int[checkCount(in.getInt(), 4, in)];
+			for (int i = 0; i < generations.length; i++) {
+				generations[i] = in.getInt();
+			}
+			is_live = new boolean[generations.length];
+			objects = new Object2D[generations.length];
+			parents = new int[generations.length];
+			sleep_times = new float[generations.length];
+			object_names_by_index = new String[generations.length];
+
+			// Objects
+			order = new int[checkCount(in.getInt(), 4, in)];
+			for (int i = 0; i < order.length; i++) {
+				int index = in.getInt();
+				if (index < 0 || index >= generations.length || is_live[index]) throw new IllegalArgumentException("Bad object index " + index);
+				Object2D obj = new Object2D();
+				obj.x = in.getFloat();
+				obj.y = in.getFloat();
+				obj.z = in.getFloat();
+				obj.rotation = in.getFloat();
+				obj.scale_x = in.getFloat();
+				obj.scale_y = in.getFloat();
+				obj.r = in.getFloat();
+				obj.g = in.getFloat();
+				obj.b = in.getFloat();
+				obj.a = in.getFloat();
+				obj.is_visible = in.get() != 0;
+				if (version >= 2) {
+					obj.is_sleeping = in.get() != 0;
+					sleep_times[index] = in.getFloat();
+				}
+				is_live[index] = true;
+				objects[index] = obj;
+				order[i] = index;
+				parents[index] = in.getInt();
+				object_names_by_index[index] = getString(in);
+
+				int component_count = in.getShort();
+				ArrayList<Component> obj_comps = new ArrayList<>(Math.max(component_count, 0));
+				object_comps.add(obj_comps);
+				for (int c = 0; c < component_count; c++) {
+					int type = in.getShort();
+					boolean is_enabled = version < 2 || in.get() != 0;
+					int length = in.getInt();
+					if (type < 0 || type >= constructors.length || length < 0) throw new IllegalArgumentException("Bad component header");
+					int end = in.position() + length;
+					if (end > in.limit()) throw new IllegalArgumentException("Component data past the end of the snapshot");
+					if (constructors[type] != null) {
+						try {
+							Component component = (Component)constructors[type].newInstance();
+							((Snapshottable)component).readSnapshot(in);
+							component.setEnabled(is_enabled);
+							obj_comps.add(component);
+						} catch(Exception e) {
+							System.err.println("Warning: Failed to restore a component of class \"" + constructors[type].getDeclaringClass().getName() + "\": " + e);
+						}
+					}
+					in.position(end); // Always continue from the end of the component, even if it was skipped
+				}
+			}
+
+			// Every parent must be a saved object, without loops
+			for (int index : order) {
+				int steps = 0;
+				for (int p = parents[index]; p != -1; p = parents[p]) {
+					if (p < 0 || p >= generations.length || !is_live[p] || ++steps > order.length) throw new IllegalArgumentException("Bad parent of object " + index);
+				}
+			}
+		} catch(BufferUnderflowException | IllegalArgumentException e) {
+			System.err.println("Failed to restore world: Invalid snapshot. (" + e + ")");
+			return false;
+		}
+
+		// Detach everything currently in the world
+		contents.forEach((handle, obj) -> obj.handle = null);
+		for (ArrayList<Component> obj_comps : object_components.values()) {
+			for (Component c : obj_comps) {
+				c.setOwner(Object2DHandle.empty(), wk);
+			}
+		}
+		for (ComponentStore store : components) {
+			if (store != null) store.clear();
+		}
+		render_list.clear();
+		object_components.clear();
+		names.clear();
+		object_names.clear();
+		commands.clear();
+		clearSleepState();
+		transforms.invalidate();
+
+		// Put the snapshot's objects in place
+		contents.reset(generations, is_live);
+		for (int i = 0; i < order.length; i++) {
+			int index = order[i];
+			Object2D obj = objects[index];
+			Object2DHandle handle = contents.place(index, obj);
+			obj.handle = handle;
+			if (obj.is_sleeping) {
+				obj.sleep_index = sleepers.size();
+				sleepers.add(obj);
+				setSleepTime(obj, sleep_times[index]);
+			}
+
+			String name = object_names_by_index[index];
+			if (name != null) {
+				names.put(name, handle);
+				object_names.put(handle, name);
+			}
+
+			ArrayList<Component> obj_comps = object_comps.get(i);
+			for (int c = 0; c < obj_comps.size(); c++) {
+				Component component = obj_comps.get(c);
+				ComponentStore store = getStore(ComponentType.of(component.getClass()));
+				if (store.has(handle)) { // Two components of the same class, and only one is allowed
+					obj_comps.remove(c--);
+					continue;
+				}
+				component.setOwner(handle, wk);
+				store.add(component, component.isEnabled() && !obj.is_sleeping);
+				addToRenderList(component);
+			}
+			object_components.put(handle, obj_comps);
+		}
+
+		// Hierarchy, now that every object exists
+		for (int index : order) {
+			if (parents[index] == -1) continue;
+			Object2D child = objects[index];
+			Object2D parent = objects[parents[index]];
+			child.parent = parent;
+			if (parent.children == null) parent.children = new ArrayList<>();
+			parent.children.add(child);
+		}
+
+		if (this == TileBeanEngine.world && TileBeanEngine.getCameraHandle() != null && !tryGetComponent(TileBeanEngine.getCameraHandle(), Camera.class).isPresent()) {
+			TileBeanEngine.setupCamera(); // The snapshot didn't have the camera
+		}
+		return true;
+	}
+
+	// Checks that a count read from a snapshot is possible, given that each item takes at least min_bytes
+	private static int checkCount(int count, int min_bytes, ByteBuffer in) {
+		if (count < 0 || (long)count * min_bytes > in.remaining()) throw new IllegalArgumentException("Bad count " + count);
+		return count;
+	}
+
+	private void writeSnapshot(ByteBuffer out) {
+		out.putInt(snapshot_magic);
+		out.putInt(snapshot_version);
+		int table_offset_position = out.position();
+		out.putInt(0); // Offset of the class table, filled in at the end
+
+		// Handle generations
+		out.putInt(contents.size());
+		for (GenArrayEntry<Object2D, Object2DHandle> entry : contents) {
+			out.putInt(entry.getKey().generation);
+		}
+
+		// Objects
+		ArrayList<Class<?>> classes = new ArrayList<>(); // The class table, in the order classes were first seen
+		int[] class_indices = new int[ComponentType.count()]; // Map of ComponentType ID to position in the class table, plus one
+		out.putInt(contents.count());
+		for (GenArrayEntry<Object2D, Object2DHandle> entry : contents.live()) {
+			Object2D obj = entry.getValue();
+			Object2DHandle handle = entry.getKey();
+			out.putInt(handle.index);
+			out.putFloat(obj.x);
+			out.putFloat(obj.y);
+			out.putFloat(obj.z);
+			out.putFloat(obj.rotation);
+			out.putFloat(obj.scale_x);
+			out.putFloat(obj.scale_y);
+			out.putFloat(obj.r);
+			out.putFloat(obj.g);
+			out.putFloat(obj.b);
+			out.putFloat(obj.a);
+			out.put((byte)(obj.is_visible ? 1 : 0));
+			out.put((byte)(obj.is_sleeping ? 1 : 0));
+			out.putFloat(obj.timer_index == -1 ? 0 : Math.max((float)(obj.wake_time - sleep_clock), Float.MIN_VALUE)); // Time left to sleep, kept above 0 so it isn't mistaken for sleeping until woken
+			out.putInt(obj.parent == null ? -1 : obj.parent.handle.index);
+			putString(out, object_names.get(handle));
+
+			ArrayList<Component> obj_comps = object_components.get(handle);
+			int count_position = out.position();
+			short component_count = 0;
+			out.putShort((short)0); // Number of components, filled in below
+			if (obj_comps != null) {
+				for (Component c : obj_comps) {
+					if (!(c instanceof Snapshottable)) continue;
+					int id = ComponentType.of(c.getClass()).getID();
+					if (id >= class_indices.length) class_indices = Arrays.copyOf(class_indices, id + 1);
+					if (class_indices[id] == 0) {
+						classes.add(c.getClass());
+						class_indices[id] = classes.size();
+					}
+					out.putShort((short)(class_indices[id] - 1));
+					out.put((byte)(c.isEnabled() ? 1 : 0));
+					int length_position = out.position();
+					out.putInt(0); // Length of the component's data, filled in below
+					((Snapshottable)c).writeSnapshot(out);
+					out.putInt(length_position, out.position() - length_position - 4);
+					component_count++;
+				}
+			}
+			out.putShort(count_position, component_count);
+		}
+
+		// Class table
+		out.putInt(table_offset_position, out.position());
+		out.putInt(classes.size());
+		for (Class<?> c : classes) {
+			putString(out, c.getName());
+		}
+	}
+
+	private static void putString(ByteBuffer out, String str) {
+		if (str == null) {
+			out.putShort((short)-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.putShort((short)bytes.length);
+		out.put(bytes);
+	}
+
+	private static String getString(ByteBuffer in) {
+		int length = in.getShort();
+		if (length == -1) return null;
+		if (length < 0) throw new IllegalArgumentException("Bad string length " + length);
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the world's command buffer.
+	 * While components are being updated, it's unsafe to add or remove components (or objects which own them) directly,
+	 * because the engine is in the middle of iterating over them. Record those changes in the command buffer instead,
+	 * and they'll be applied together at the end of the current logic step.
+	 * During a parallel update, each task gets its own buffer, which is merged back into this one in a fixed order (see UpdateScheduler).
+	 */
+	public CommandBuffer commands() {
+		CommandBuffer task = task_commands.get();
+		if (task != null) return task;
+		return commands;
+	}
+
+	/**
+	 * Returns the number of objects in the world.
+	 */
+	public int count() {
+		return contents.count();
+	}
+
 	/**
 	 * Returns true if the object that the handle refers to exists, false otherwise.
 	 */
@@ -111,14 +741,14 @@ public class World {
 	 * Retrieves an object from the world, if present.
 	 */
 	public Optional<Object2D> tryGet(Object2DHandle handle) {
-		return contents.get(handle);
+		return Optional.ofNullable(contents.get(handle));
 	}
 
 	/**
 	 * The less-safe version of tryGet. Use this when you expect the object to be there.
 	 */
 	public Object2D get(Object2DHandle handle) {
-		return contents.get(handle).get();
+		return contents.get(handle);
 	}
 
 	/**
@@ -135,9 +765,8 @@ public class World {
 	 * Returns the name associated with the given handle, or empty string if not found.
 	 */
 	public String getName(Object2DHandle handle) {
-		for (Map.Entry<String, Object2DHandle> entry : names.entrySet()) {
-			if (entry.getValue().equals(handle)) return entry.getKey();
-		}
+		String name = object_names.get(handle);
+		if (name != null) return name;
 		return "";
 	}
 
@@ -149,86 +778,107 @@ public class World {
 		if (!handle.isEmpty() || contents.expired(handle)) return; // Invalid or removed handle
 		if (component.getOwner().isEmpty()) return; // Component is already added
 		
-		int hash = component.getClass().hashCode();
-		if (object_components.containsKey(handle)) {
-			ArrayList<Integer> list = object_component_types.get(handle);
-			if (list.contains(hash)) return; // Entity already has component of this type, and only one is allowed
-			
-			// Component will be added to entity: Update collections
-			list.add(hash);
-			object_components.get(handle).add(component);
-		}
+		ComponentStore store = getStore(ComponentType.of(component.getClass()));
+		if (store.has(handle)) return; // Entity already has component of this type, and only one is allowed
+
+		// Component will be added to entity: Update collections
+		ArrayList<Component> obj_comps = object_components.get(handle);
+		if (obj_comps != null) obj_comps.add(component);
 
 		component.setOwner(handle, wk);
-		ArrayList<Component> list;
-		if (components.containsKey(hash)) {
-			list = components.get(hash);
-		} else {
-			list = new ArrayList<Component>();
-			components.put(hash, list);
-
-			// Construct a new list of type info.
-			// For example, the type info list for Sprite should look like:
-			// { Sprite.class.hashCode(), Drawable.class.hashCode(), Component.class.hashCode() }
-			//         Sprite ------> is a -------> Drawable -----> is a -------> Component
-			ArrayList<Integer> type_info = new ArrayList<>();
-			Class<?> c = component.getClass();
-			while (true) {
-				//System.out.println("Adding class " + c.getName() + " to type info " + component.getClass().getName() + " with hash " + c.hashCode()); // Debug
-				type_info.add(c.hashCode());
-				if (!components.containsKey(c.hashCode())) components.put(c.hashCode(), new ArrayList<Component>()); // Be safe and create all component lists in the inheritance chain
-				if (c.hashCode() == Component.class.hashCode()) break;
-				c = c.getSuperclass();
-			}
-			component_type_info.put(hash, type_info);
-		}
-		list.add(component);
+		store.add(component, component.isEnabled() && !contents.get(handle).is_sleeping);
+		addToRenderList(component);
 
 		component.initialize();
 	}
 
+	/**
+	 * Returns the list of every Drawable in the world, sorted by z. Call update on it before use.
+	 */
+	RenderList renderList() {
+		return render_list;
+	}
+
+	private void addToRenderList(Component c) {
+		if (c instanceof Drawable) render_list.add((Drawable)c);
+	}
+
+	private void removeFromRenderList(Component c) {
+		if (c instanceof Drawable) render_list.remove((Drawable)c);
+	}
+
+	/**
+	 * Returns the store for the given component type, creating it if this world doesn't have one yet.
+	 */
+	ComponentStore getStore(ComponentType type) {
+		int id = type.getID();
+		if (id >= components.length) components = Arrays.copyOf(components, Math.max(id + 1, components.length * 2));
+		ComponentStore store = components[id];
+		if (store == null) {
+			store = new ComponentStore();
+			components[id] = store;
+		}
+		return store;
+	}
+
+	/**
+	 * Returns the store for the given component type, or null if this world doesn't have one.
+	 */
+	private ComponentStore findStore(ComponentType type) {
+		if (type == null) return null;
+		int id = type.getID();
+		if (id >= components.length) return null;
+		return components[id];
+	}
+
 	/**
 	 * Removes a component from an object.
 	 * If the object does not have a component with the specified class hash code, nothing happens.
 	 */
 	public void removeComponent(Object2DHandle handle, int hash) {
+		removeComponent(handle, ComponentType.of(hash));
+	}
+
+	/**
+	 * Removes a component from an object.
+	 * If the object does not have a component of the specified class, nothing happens.
+	 */
+	public void removeComponent(Object2DHandle handle, Class<? extends Component> component_class) {
+		removeComponent(handle, ComponentType.of(component_class));
+	}
+
+	/**
+	 * Removes a component from an object.
+	 * If the object does not have a component of the specified type, nothing happens.
+	 */
+	public void removeComponent(Object2DHandle handle, ComponentType type) {
 		if (!handle.isEmpty() || contents.expired(handle)) return; // Invalid or removed handle
 
-		if (object_component_types.containsKey(handle)) {
-			ArrayList<Integer> obj_types = object_component_types.get(handle);
-			if (obj_types.contains((Integer)hash)) {
-				obj_types.remove((Integer)hash);
-
-				ArrayList<Component> obj_comps = object_components.get(handle);
-				Component c = null;
-				for (int i = 0; i < obj_comps.size(); i++) {
-					c = obj_comps.get(i);
-					if (c.getClass().hashCode() == hash) {
-						obj_comps.remove(i);
-						break;
-					}
-				}
+		ComponentStore store = findStore(type);
+		if (store == null) return;
+		Component c = store.remove(handle);
+		if (c == null) return;
 
-				components.get(hash).remove(c);
+		ArrayList<Component> obj_comps = object_components.get(handle);
+		if (obj_comps != null) obj_comps.remove(c);
+		removeFromRenderList(c);
 
-				c.setOwner(Object2DHandle.empty(), wk);
-			}
-		}
+		c.setOwner(Object2DHandle.empty(), wk);
 	}
 
 	/**
 	 * Retrieves a component of an object with the given class hash code, if present.
+	 * (The version of this method which takes a Class is faster, and doesn't require a cast.)
 	 */
 	public Optional<Component> tryGetComponent(Object2DHandle handle, int hash) {
-		if (!handle.isEmpty() || contents.expired(handle)) return Optional.empty(); // Invalid or removed handle
+		return Optional.ofNullable(getComponent(handle, hash));
+	}
 
-		if (components.containsKey(hash)) {
-			ArrayList<Component> list = components.get(hash);
-			for (Component c : list) {
-				if (c.getOwner().equals(handle)) return Optional.of(c);
-			}
-		}
-		return Optional.empty();
+	/**
+	 * Retrieves a component of an object with the given class, if present.
+	 */
+	public <T extends Component> Optional<T> tryGetComponent(Object2DHandle handle, Class<T> component_class) {
+		return Optional.ofNullable(getComponent(handle, component_class));
 	}
 
 	/**
@@ -237,11 +887,23 @@ public class World {
 	public Component getComponent(Object2DHandle handle, int hash) {
 		if (!handle.isEmpty() || contents.expired(handle)) return null; // Invalid or removed handle
 
-		if (components.containsKey(hash)) {
-			ArrayList<Component> list = components.get(hash);
-			for (Component c : list) {
-				if (c.getOwner().equals(handle)) return c;
-			}
+		ComponentStore store = findStore(ComponentType.of(hash));
+		if (store != null) {
+			return store.get(handle);
+		}
+		return null;
+	}
+
+	/**
+	 * The less-safe version of tryGetComponent. Use this when you expect the component to be there.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Component> T getComponent(Object2DHandle handle, Class<T> component_class) {
+		if (!handle.isEmpty() || contents.expired(handle)) return null; // Invalid or removed handle
+
+		ComponentStore store = findStore(ComponentType.of(component_class));
+		if (store != null) {
+			return (T)store.get(handle);
 		}
 		return null;
 	}
@@ -259,27 +921,115 @@ public class World {
 		return new Component[]{};
 	}
 
+	/**
+	 * Returns a query over all components of the given class, including derived classes.
+	 * The query is cached, so calling this every frame is cheap, and iterating it doesn't allocate. Prefer this over getComponentsOfClass.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Component> ComponentQuery<T> query(Class<T> component_class) {
+		ComponentType type = ComponentType.of(component_class);
+		int id = type.getID();
+		if (id >= queries.length) queries = Arrays.copyOf(queries, Math.max(id + 1, queries.length * 2));
+		ComponentQuery<T> ret = (ComponentQuery<T>)queries[id];
+		if (ret == null) {
+			ret = new ComponentQuery<T>(this, type);
+			queries[id] = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Performs the given action for every object which owns both a component of class A and a component of class B (derived classes count).
+	 * Iteration is driven by whichever class has fewer components, and the other is looked up in O(1), so this is much cheaper than
+	 * calling getComponent for every object in a loop. It doesn't allocate anything per object.
+	 * Don't add or remove components of these classes from inside the action; use commands() for that.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A extends Component, B extends Component> void each(Class<A> class_a, Class<B> class_b, Each2<A, B> action) {
+		ComponentQuery<A> query_a = query(class_a);
+		ComponentQuery<B> query_b = query(class_b);
+		boolean drive_a = query_a.size() <= query_b.size();
+		ComponentQuery<?> driver = drive_a ? query_a : query_b;
+		for (int s = 0; s < driver.storeCount(); s++) {
+			ComponentStore store = driver.store(s);
+			for (int i = 0; i < store.size(); i++) {
+				Component c = store.get(i);
+				Object2DHandle handle = c.getOwner();
+				if (drive_a) {
+					B b = query_b.get(handle);
+					if (b != null) action.accept(handle, (A)c, b);
+				} else {
+					A a = query_a.get(handle);
+					if (a != null) action.accept(handle, a, (B)c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Performs the given action for every object which owns a component of class A, a component of class B, and a component of class C (derived classes count).
+	 * See the two-class version of each for details.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A extends Component, B extends Component, C extends Component> void each(Class<A> class_a, Class<B> class_b, Class<C> class_c, Each3<A, B, C> action) {
+		ComponentQuery<A> query_a = query(class_a);
+		ComponentQuery<B> query_b = query(class_b);
+		ComponentQuery<C> query_c = query(class_c);
+		int size_a = query_a.size();
+		int size_b = query_b.size();
+		int size_c = query_c.size();
+		int driver_index = 0; // Which query to drive iteration from: 0 = A, 1 = B, 2 = C
+		if (size_b < size_a && size_b <= size_c) driver_index = 1;
+		else if (size_c < size_a && size_c < size_b) driver_index = 2;
+		ComponentQuery<?> driver = driver_index == 0 ? query_a : (driver_index == 1 ? query_b : query_c);
+		for (int s = 0; s < driver.storeCount(); s++) {
+			ComponentStore store = driver.store(s);
+			for (int i = 0; i < store.size(); i++) {
+				Component c = store.get(i);
+				Object2DHandle handle = c.getOwner();
+				A a = driver_index == 0 ? (A)c : query_a.get(handle);
+				if (a == null) continue;
+				B b = driver_index == 1 ? (B)c : query_b.get(handle);
+				if (b == null) continue;
+				C cc = driver_index == 2 ? (C)c : query_c.get(handle);
+				if (cc == null) continue;
+				action.accept(handle, a, b, cc);
+			}
+		}
+	}
+
 	/**
 	 * Returns a set of all components that are of the class with the given class hash code, including derived classes.
 	 * For example, if you call getComponentsOfClass(SomeClassDerivedFromSprite.class.hashCode()), you will get all components which are SomeClassDerivedFromSprite,
 	 * whereas if you call getComponentsOfClass(Sprite.class.hashCode()) you will get all components of type Sprite and of type SomeClassDerivedFromSprite.
 	 */
+	@SuppressWarnings("unchecked")
 	public HashSet<Component> getComponentsOfClass(int hash) {
 		HashSet<Component> ret = new HashSet<Component>();
-		for(Integer key : component_type_info.keySet()) {
-			ArrayList<Integer> type_info = component_type_info.get(key);
-			if (type_info.contains(hash)) {
-				if (components.containsKey(key)) { // This check is performed because there's no guarantee all component types have been instantiated at least once to create their lists
-					ArrayList<Component> list = components.get(key);
-					for (Component c : list) {
-						ret.add(c);
-					}
-				}
-			}
-		}
+		ComponentType type = ComponentType.of(hash);
+		if (type == null) return ret; // No component of this class has ever been added
+		query((Class<Component>)type.getComponentClass()).addTo(ret);
 		return ret;
 	}
 
+	/**
+	 * The action performed by the two-class version of World.each.
+	 */
+	public interface Each2<A extends Component, B extends Component> {
+
+		void accept(Object2DHandle handle, A a, B b);
+
+	}
+
+	/**
+	 * The action performed by the three-class version of World.each.
+	 */
+	public interface Each3<A extends Component, B extends Component, C extends Component> {
+
+		void accept(Object2DHandle handle, A a, B b, C c);
+
+	}
+
 	/**
 	 * This little class acts as a "key" that Component.setOwner requires.
 	 * It's only accessible by World and therefore only World may call Component.setOwner.
@@ -287,6 +1037,10 @@ public class World {
 	public class WorldKey {
 		
 		private WorldKey() {}
+
+		World getWorld() {
+			return World.this;
+		}
 	
 	}
 